@@ -0,0 +1,67 @@
+package com.github.leifoolsen.jerseyguicepersist.config;
+
+import com.github.leifoolsen.jerseyguicepersist.constraint.AssertMethodAsTrue;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+@AssertMethodAsTrue(value="isValid", message="Expected minLimit <= initialLimit <= maxLimit, and rejectStatus 429 or 503")
+public class AdmissionControlConfig {
+
+    // false: no limit on requests in flight
+    private boolean enabled = true;
+
+    // Requests in flight per resource method. The limit starts at initialLimit and adapts between minLimit and maxLimit
+    @Min(1)
+    private int initialLimit = 20;
+
+    @Min(1)
+    private int minLimit = 2;
+
+    @Min(1)
+    private int maxLimit = 200;
+
+    // Responses slower than this, in milliseconds, or 503 responses, decrease the limit
+    @Min(1)
+    private long latencyThreshold = 500;
+
+    // The limit is multiplied by backoffRatio when decreased
+    @DecimalMin("0.1")
+    @DecimalMax("0.99")
+    private double backoffRatio = 0.9;
+
+    // Status of rejected requests, 503 Service Unavailable or 429 Too Many Requests
+    private int rejectStatus = 503;
+
+    // Retry-After, in seconds, of rejected requests
+    @Min(0)
+    private int retryAfter = 1;
+
+    AdmissionControlConfig() {}
+
+    public boolean isValid() {
+        return minLimit <= initialLimit && initialLimit <= maxLimit && (rejectStatus == 429 || rejectStatus == 503);
+    }
+
+    public boolean enabled() { return enabled; }
+
+    public int initialLimit() { return initialLimit; }
+
+    public int minLimit() { return minLimit; }
+
+    public int maxLimit() { return maxLimit; }
+
+    public long latencyThreshold() { return latencyThreshold; }
+
+    public double backoffRatio() { return backoffRatio; }
+
+    public int rejectStatus() { return rejectStatus; }
+
+    public int retryAfter() { return retryAfter; }
+}
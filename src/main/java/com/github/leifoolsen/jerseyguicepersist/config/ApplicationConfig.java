@@ -58,6 +58,30 @@ public class ApplicationConfig {
     @Valid
     private PersistenceUnitConfig persistenceUnitConfig;
 
+    // Optional read (replica) persistence unit, used by @ReadOnly repository methods
+    @Valid
+    private PersistenceUnitConfig readPersistenceUnitConfig = null;
+
+    @NotNull
+    @Valid
+    private RepositoryConfig repositoryConfig;
+
+    @NotNull
+    @Valid
+    private AdmissionControlConfig admissionControlConfig;
+
+    @NotNull
+    @Valid
+    private RateLimitConfig rateLimitConfig;
+
+    @NotNull
+    @Valid
+    private CompressionConfig compressionConfig;
+
+    @NotNull
+    @Valid
+    private DecompressionConfig decompressionConfig;
+
     ApplicationConfig() {}
 
     public boolean isValidStage() {
@@ -89,6 +113,18 @@ public class ApplicationConfig {
 
     public PersistenceUnitConfig persistenceUnitConfig() { return persistenceUnitConfig; }
 
+    public PersistenceUnitConfig readPersistenceUnitConfig() { return readPersistenceUnitConfig; }
+
+    public RepositoryConfig repositoryConfig() { return repositoryConfig; }
+
+    public AdmissionControlConfig admissionControlConfig() { return admissionControlConfig; }
+
+    public RateLimitConfig rateLimitConfig() { return rateLimitConfig; }
+
+    public CompressionConfig compressionConfig() { return compressionConfig; }
+
+    public DecompressionConfig decompressionConfig() { return decompressionConfig; }
+
     private void calculateWorkPath() {
         // Paths.get(appHome).resolve(workPath) will generate an absolute path from 'workPath' if workPath starts with '/'
         // else, workPath will be joined with appHome
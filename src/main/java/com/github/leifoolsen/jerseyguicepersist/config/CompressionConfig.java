@@ -0,0 +1,62 @@
+package com.github.leifoolsen.jerseyguicepersist.config;
+
+import com.github.leifoolsen.jerseyguicepersist.constraint.AssertMethodAsTrue;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+@AssertMethodAsTrue(value="isValid", message="encodings must be one or more of gzip and deflate")
+public class CompressionConfig {
+    public static final List<String> SUPPORTED_ENCODINGS = Arrays.asList("gzip", "deflate");
+
+    // false: @Compress responses are sent uncompressed
+    private boolean enabled = true;
+
+    // Bodies smaller than this, in bytes, are sent uncompressed
+    @Min(0)
+    private int minSize = 1024;
+
+    // 1 (fastest) .. 9 (smallest), -1 = zlib default
+    @Min(-1)
+    @Max(9)
+    private int level = -1;
+
+    // In order of preference, when a client accepts several with the same q-value
+    @NotNull
+    private List<String> encodings = new ArrayList<>(SUPPORTED_ENCODINGS);
+
+    // Idle deflaters kept per encoding
+    @Min(0)
+    private int poolSize = 64;
+
+    // Output buffer per deflater, in bytes
+    @Min(512)
+    private int bufferSize = 8192;
+
+    CompressionConfig() {}
+
+    public boolean isValid() {
+        return encodings != null && !encodings.isEmpty() && SUPPORTED_ENCODINGS.containsAll(encodings);
+    }
+
+    public boolean enabled() { return enabled; }
+
+    public int minSize() { return minSize; }
+
+    public int level() { return level; }
+
+    public List<String> encodings() { return encodings; }
+
+    public int poolSize() { return poolSize; }
+
+    public int bufferSize() { return bufferSize; }
+}
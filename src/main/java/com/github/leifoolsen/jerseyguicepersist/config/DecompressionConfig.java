@@ -0,0 +1,42 @@
+package com.github.leifoolsen.jerseyguicepersist.config;
+
+import javax.validation.constraints.Min;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class DecompressionConfig {
+
+    // false: request bodies with a Content-Encoding are passed on as is
+    private boolean enabled = true;
+
+    // Max size of a compressed request body, in bytes, as sent
+    @Min(1)
+    private long maxCompressedSize = 64L * 1024 * 1024;
+
+    // Max size of a compressed request body, in bytes, inflated
+    @Min(1)
+    private long maxInflatedSize = 256L * 1024 * 1024;
+
+    // Idle inflaters kept per encoding
+    @Min(0)
+    private int poolSize = 32;
+
+    // Input buffer per inflater, in bytes
+    @Min(512)
+    private int bufferSize = 65536;
+
+    DecompressionConfig() {}
+
+    public boolean enabled() { return enabled; }
+
+    public long maxCompressedSize() { return maxCompressedSize; }
+
+    public long maxInflatedSize() { return maxInflatedSize; }
+
+    public int poolSize() { return poolSize; }
+
+    public int bufferSize() { return bufferSize; }
+}
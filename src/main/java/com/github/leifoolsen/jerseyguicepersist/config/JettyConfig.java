@@ -11,6 +11,8 @@ import javax.validation.constraints.NotNull;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.List;
 
 @XmlRootElement
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -75,6 +77,16 @@ public class JettyConfig {
     @XmlAccessorType(XmlAccessType.FIELD)
     @AssertMethodAsTrue(value="isValid", message="maxThreads value must be greater than minThreads value")
     public static class ThreadPoolConfig {
+        public enum Mode {
+            // Jetty's QueuedThreadPool, unbounded job queue
+            QUEUED,
+            // QueuedThreadPool with a job queue of maxQueueSize. Jobs over the bound are rejected,
+            // and Jetty closes the connection, rather than queued until the heap fills
+            BOUNDED,
+            // A virtual thread per job, on a JDK that has them. Falls back to BOUNDED on older JDKs
+            VIRTUAL
+        }
+
         @Min(8)
         private int minThreads = 8;
 
@@ -85,6 +97,17 @@ public class JettyConfig {
 
         private String name = null;
 
+        @NotNull
+        private Mode mode = Mode.QUEUED;
+
+        // Jobs waiting for a thread, in bounded mode
+        @Min(1)
+        private int maxQueueSize = 6000;
+
+        // Threads above minThreads idle this long, in milliseconds, are stopped
+        @Min(1000)
+        private int idleTimeout = 60000;
+
         ThreadPoolConfig() {}
 
         public boolean isValid() {
@@ -98,11 +121,18 @@ public class JettyConfig {
         public boolean daemon() { return daemon; }
 
         public String name() { return name; }
+
+        public Mode mode() { return mode; }
+
+        public int maxQueueSize() { return maxQueueSize; }
+
+        public int idleTimeout() { return idleTimeout; }
     }
 
     // -------------------------------
     @XmlRootElement
     @XmlAccessorType(XmlAccessType.FIELD)
+    @AssertMethodAsTrue(value="isValid", message="securePort requires keyStorePath and keyStorePassword")
     public static class ServerConnectorConfig {
         @NotBlank
         private String scheme = "http";
@@ -119,8 +149,75 @@ public class JettyConfig {
 
         private String shutdownToken = null;
 
+        // HTTP/2 cleartext (h2c) on the port above, besides HTTP/1.1. With prior knowledge, or "Upgrade: h2c"
+        private boolean http2c = false;
+
+        // TLS connector, 0 = none
+        @Min(0)
+        @Max(65535)
+        private int securePort = 0;
+
+        private String keyStorePath = null;
+        private String keyStorePassword = null;
+
+        // HTTP/2 over TLS (h2) on securePort, negotiated with ALPN, falling back to HTTP/1.1.
+        // On Java 8, ALPN needs the alpn-boot jar matching the JDK version on -Xbootclasspath/p
+        private boolean http2 = false;
+
+        // HTTP/2 settings, for h2c and h2. Streams a client may have open on one connection
+        @Min(1)
+        private int maxConcurrentStreams = 128;
+
+        // HTTP/2 flow control window, in bytes, a client may send on one stream before it must wait for a window update
+        @Min(65535)
+        private int initialStreamWindow = 65535;
+
+        // Network tuning, for every connector. -1 = Jetty default, derived from the number of cores
+        @Min(-1)
+        private int acceptors = -1;
+
+        @Min(-1)
+        private int selectors = -1;
+
+        // Backlog of connections not yet accepted, 0 = OS default
+        @Min(0)
+        private int acceptQueueSize = 0;
+
+        // SO_REUSEADDR, lets a restarted server bind the port while old connections are in TIME_WAIT
+        private boolean reuseAddress = true;
+
+        // TCP_NODELAY, no Nagle delay for small responses
+        private boolean tcpNoDelay = true;
+
+        // Bytes, per connection
+        @Min(1024)
+        private int inputBufferSize = 8192;
+
+        @Min(1024)
+        private int outputBufferSize = 32768;
+
+        // Max size of the request and response headers, in bytes
+        @Min(1024)
+        private int requestHeaderSize = 8192;
+
+        @Min(1024)
+        private int responseHeaderSize = 8192;
+
+        // Max size of a header field kept in the parser cache, in bytes
+        @Min(0)
+        private int headerCacheSize = 512;
+
+        // Extra HTTP/1.1 (and h2c) listeners, e.g. a separate admin port. Same tuning as above
+        @NotNull
+        @Valid
+        private List<ListenerConfig> listeners = new ArrayList<>();
+
         ServerConnectorConfig() {}
 
+        public boolean isValid() {
+            return securePort == 0 || (StringUtil.blankToNull(keyStorePath) != null && keyStorePassword != null);
+        }
+
         public String scheme() { return scheme; }
 
         public String host() { return host; }
@@ -130,6 +227,66 @@ public class JettyConfig {
         public int idleTimeout() { return idleTimeout; }
 
         public String shutdownToken() { return shutdownToken; }
+
+        public boolean http2c() { return http2c; }
+
+        public int securePort() { return securePort; }
+
+        public String keyStorePath() { return keyStorePath; }
+
+        public String keyStorePassword() { return keyStorePassword; }
+
+        public boolean http2() { return http2; }
+
+        public int maxConcurrentStreams() { return maxConcurrentStreams; }
+
+        public int initialStreamWindow() { return initialStreamWindow; }
+
+        public int acceptors() { return acceptors; }
+
+        public int selectors() { return selectors; }
+
+        public int acceptQueueSize() { return acceptQueueSize; }
+
+        public boolean reuseAddress() { return reuseAddress; }
+
+        public boolean tcpNoDelay() { return tcpNoDelay; }
+
+        public int inputBufferSize() { return inputBufferSize; }
+
+        public int outputBufferSize() { return outputBufferSize; }
+
+        public int requestHeaderSize() { return requestHeaderSize; }
+
+        public int responseHeaderSize() { return responseHeaderSize; }
+
+        public int headerCacheSize() { return headerCacheSize; }
+
+        public List<ListenerConfig> listeners() { return listeners; }
+    }
+
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class ListenerConfig {
+        // Connector name, e.g. "admin"
+        @NotBlank
+        private String name = null;
+
+        // null = host of the server connector
+        private String host = null;
+
+        // 0 = any free port
+        @Min(0)
+        @Max(65535)
+        private int port = 0;
+
+        ListenerConfig() {}
+
+        public String name() { return name; }
+
+        public String host() { return StringUtil.blankToNull(host); }
+
+        public int port() { return port; }
     }
 
 
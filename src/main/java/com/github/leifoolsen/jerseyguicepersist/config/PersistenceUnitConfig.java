@@ -1,13 +1,19 @@
 package com.github.leifoolsen.jerseyguicepersist.config;
 
+import com.github.leifoolsen.jerseyguicepersist.constraint.AssertMethodAsTrue;
 import com.google.common.base.Splitter;
 import org.hibernate.validator.constraints.NotBlank;
 import org.hibernate.validator.constraints.NotEmpty;
 
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -21,6 +27,18 @@ public class PersistenceUnitConfig {
     @NotEmpty
     private List<String> properties = null;
 
+    // Optional pooled DataSource. If absent, EclipseLink's internal connection pool is used
+    @Valid
+    private DataSourceConfig dataSource = null;
+
+    // Optional. JDBC urls of shards 1..N-1; shard 0 is the database given by the properties above.
+    // Each shard is created from the properties above, with its own url
+    private List<String> shardUrls = null;
+
+    // Optional shared (L2) cache settings per entity. If absent, the EclipseLink defaults are used
+    @Valid
+    private CacheConfig cache = null;
+
     public PersistenceUnitConfig() {}
 
     public String name() {
@@ -28,13 +46,172 @@ public class PersistenceUnitConfig {
     }
 
     public Properties properties() {
+        return toProperties(properties);
+    }
+
+    public DataSourceConfig dataSource() {
+        return dataSource;
+    }
+
+    public List<String> shardUrls() {
+        return shardUrls != null ? shardUrls : Collections.<String>emptyList();
+    }
+
+    public CacheConfig cache() {
+        return cache;
+    }
+
+    private static Properties toProperties(final List<String> nameValues) {
         Properties p = new Properties();
-        for (String s : properties) {
-            List<String> nameValue = Splitter.on('=').trimResults().splitToList(s);
+        for (String s : nameValues) {
+            List<String> nameValue = Splitter.on('=').limit(2).trimResults().splitToList(s);
             if(nameValue.size() > 0) {
                 p.put(nameValue.get(0), nameValue.size() > 1 ? nameValue.get(1) : "");
             }
         }
         return  p;
     }
+
+
+    // -------------------------------
+    // Connection url, driver, user and password are taken from the "javax.persistence.jdbc.*" properties.
+    // All timeouts are in milliseconds. See: https://github.com/brettwooldridge/HikariCP#configuration-knobs-baby
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    @AssertMethodAsTrue(value="isValid", message="maximumPoolSize must be >= minimumIdle, and validationTimeout < connectionTimeout")
+    public static class DataSourceConfig {
+        private boolean enabled = true;
+
+        @NotBlank
+        private String poolName = "jpa-pool";
+
+        @Min(0)
+        private int minimumIdle = 2;
+
+        @Min(1)
+        @Max(1000)
+        private int maximumPoolSize = 10;
+
+        // Max time to wait for a connection from the pool
+        @Min(250)
+        private long connectionTimeout = 30000;
+
+        // Max time to wait for a connection to be validated
+        @Min(250)
+        private long validationTimeout = 5000;
+
+        // Only needed for drivers that do not support JDBC4 Connection.isValid()
+        private String connectionTestQuery = null;
+
+        // Log a possible leak when a connection has been out of the pool longer than this. 0 to disable
+        @Min(0)
+        private long leakDetectionThreshold = 0;
+
+        @Min(0)
+        private long idleTimeout = 600000;
+
+        @Min(0)
+        private long maxLifetime = 1800000;
+
+        // Driver specific properties, e.g. prepared statement cache settings, as "name = value"
+        @NotNull
+        private List<String> dataSourceProperties = new ArrayList<>();
+
+        DataSourceConfig() {}
+
+        public boolean isValid() {
+            return maximumPoolSize >= minimumIdle && validationTimeout < connectionTimeout;
+        }
+
+        public boolean enabled() { return enabled; }
+
+        public String poolName() { return poolName; }
+
+        public int minimumIdle() { return minimumIdle; }
+
+        public int maximumPoolSize() { return maximumPoolSize; }
+
+        public long connectionTimeout() { return connectionTimeout; }
+
+        public long validationTimeout() { return validationTimeout; }
+
+        public String connectionTestQuery() { return connectionTestQuery; }
+
+        public long leakDetectionThreshold() { return leakDetectionThreshold; }
+
+        public long idleTimeout() { return idleTimeout; }
+
+        public long maxLifetime() { return maxLifetime; }
+
+        public Properties dataSourceProperties() { return toProperties(dataSourceProperties); }
+    }
+
+
+    // -------------------------------
+    // Shared (L2) cache. See: https://wiki.eclipse.org/EclipseLink/Examples/JPA/Caching
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class CacheConfig {
+        // Count cache hits and misses with EclipseLink's PerformanceMonitor. Adds some overhead to every query
+        private boolean statistics = false;
+
+        @NotNull
+        @Valid
+        private List<EntityCacheConfig> entities = new ArrayList<>();
+
+        CacheConfig() {}
+
+        public boolean statistics() { return statistics; }
+
+        public List<EntityCacheConfig> entities() { return entities; }
+    }
+
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class EntityCacheConfig {
+        public enum Type {
+            FULL,       // Never evicts; only for small, bounded tables
+            WEAK,       // Holds only objects referenced by the application
+            SOFT,       // Evicted by the garbage collector when memory is low
+            SOFT_WEAK,  // EclipseLink default. The most recently used objects held softly, the rest weakly
+            HARD_WEAK,  // As SOFT_WEAK, with the most recently used objects held strongly
+            NONE        // No cache
+        }
+
+        public enum Isolation {
+            SHARED,     // Cached in the shared cache
+            PROTECTED,  // Cached in the shared cache, relationships to isolated entities are not
+            ISOLATED    // Not cached in the shared cache, only in the persistence context
+        }
+
+        // Entity name, e.g. "User"
+        @NotBlank
+        private String entity = null;
+
+        @NotNull
+        private Type type = Type.SOFT_WEAK;
+
+        // Number of objects held strongly or softly; the initial size of FULL and WEAK caches
+        @Min(0)
+        private int size = 100;
+
+        // Cached objects are invalidated this many seconds after they were read. 0 = never
+        @Min(0)
+        private long expirySeconds = 0;
+
+        @NotNull
+        private Isolation isolation = Isolation.SHARED;
+
+        EntityCacheConfig() {}
+
+        public String entity() { return entity; }
+
+        public Type type() { return type; }
+
+        public int size() { return size; }
+
+        public long expirySeconds() { return expirySeconds; }
+
+        public Isolation isolation() { return isolation; }
+    }
 }
@@ -0,0 +1,72 @@
+package com.github.leifoolsen.jerseyguicepersist.config;
+
+import org.hibernate.validator.constraints.NotBlank;
+
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.List;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class RateLimitConfig {
+
+    // false: no rate limits
+    private boolean enabled = true;
+
+    // Clients are identified by this request header, e.g. an API key. Requests without it by remote address
+    private String clientHeader = null;
+
+    // Max number of clients tracked. The least recently seen clients are evicted first
+    @Min(1)
+    private int maxClients = 10000;
+
+    // Clients not seen for this many seconds are evicted; their buckets are full again anyway
+    @Min(1)
+    private int expireAfterAccessSeconds = 300;
+
+    @NotNull
+    @Valid
+    private List<LimitConfig> limits = new ArrayList<>();
+
+    RateLimitConfig() {}
+
+    public boolean enabled() { return enabled; }
+
+    public String clientHeader() { return clientHeader; }
+
+    public int maxClients() { return maxClients; }
+
+    public int expireAfterAccessSeconds() { return expireAfterAccessSeconds; }
+
+    public List<LimitConfig> limits() { return limits; }
+
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class LimitConfig {
+        // Name used in @RateLimited on resource methods, e.g. "list"
+        @NotBlank
+        private String name = null;
+
+        // Sustained rate, per client
+        @DecimalMin("0.001")
+        private double requestsPerSecond = 10;
+
+        // Max requests in a burst, per client
+        @Min(1)
+        private int burst = 20;
+
+        LimitConfig() {}
+
+        public String name() { return name; }
+
+        public double requestsPerSecond() { return requestsPerSecond; }
+
+        public int burst() { return burst; }
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.leifoolsen.jerseyguicepersist.config;
+
+import com.github.leifoolsen.jerseyguicepersist.domain.IdGenerator;
+import org.hibernate.validator.constraints.NotBlank;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class RepositoryConfig {
+
+    // Number of entities to commit per transaction in bulk operations.
+    // Should match "eclipselink.jdbc.batch-writing.size" in persistenceUnitConfig
+    @Min(1)
+    @Max(100000)
+    private int batchCommitSize = 1000;
+
+    // Id generator for new users: RANDOM (UUID v4) or TIME_ORDERED (UUID v7 style, index friendly)
+    @NotNull
+    private IdGenerator idGenerator = IdGenerator.RANDOM;
+
+    // Max number of ids in one "IN (...)" list. Larger multi-gets are split into several queries
+    @Min(1)
+    @Max(10000)
+    private int inListChunkSize = 500;
+
+    @NotNull
+    @Valid
+    private CacheConfig userCacheConfig = new CacheConfig();
+
+    // Keep an in-memory index of all usernames for prefix queries and type-ahead
+    private boolean usernameIndexEnabled = false;
+
+    // Create the EntityManager of a request when it is first used, instead of for every request
+    private boolean lazyUnitOfWork = true;
+
+    @NotNull
+    @Valid
+    private WriteBehindConfig writeBehindConfig = new WriteBehindConfig();
+
+    @NotNull
+    @Valid
+    private DatabaseExecutorConfig databaseExecutorConfig = new DatabaseExecutorConfig();
+
+    RepositoryConfig() {}
+
+    public int batchCommitSize() { return batchCommitSize; }
+
+    public IdGenerator idGenerator() { return idGenerator; }
+
+    public int inListChunkSize() { return inListChunkSize; }
+
+    public CacheConfig userCacheConfig() { return userCacheConfig; }
+
+    public boolean usernameIndexEnabled() { return usernameIndexEnabled; }
+
+    public boolean lazyUnitOfWork() { return lazyUnitOfWork; }
+
+    public WriteBehindConfig writeBehindConfig() { return writeBehindConfig; }
+
+    public DatabaseExecutorConfig databaseExecutorConfig() { return databaseExecutorConfig; }
+
+
+    // -------------------------------
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class CacheConfig {
+        private boolean enabled = true;
+
+        @Min(0)
+        private long maximumSize = 10000;
+
+        @Min(1)
+        private long expireAfterWriteSeconds = 60;
+
+        @Min(1)
+        private int concurrencyLevel = 4;
+
+        CacheConfig() {}
+
+        public boolean enabled() { return enabled; }
+
+        public long maximumSize() { return maximumSize; }
+
+        public long expireAfterWriteSeconds() { return expireAfterWriteSeconds; }
+
+        public int concurrencyLevel() { return concurrencyLevel; }
+    }
+
+
+    // -------------------------------
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class WriteBehindConfig {
+        private boolean enabled = false;
+
+        // Max number of creates waiting to be written. When full, requests are rejected with 429
+        @Min(1)
+        private int queueCapacity = 10000;
+
+        // Max number of creates per group commit
+        @Min(1)
+        private int batchSize = 500;
+
+        // Max time, in milliseconds, to wait for more creates before a batch is committed
+        @Min(0)
+        private int maxBatchDelay = 5;
+
+        // Journal file, relative to the application work path
+        @NotBlank
+        private String journalFile = "user-write-behind.journal";
+
+        @Min(1)
+        @Max(1024)
+        private int journalSizeMb = 64;
+
+        // Force every journal write to disk. Without it, the journal survives a JVM crash but not an OS crash
+        private boolean syncJournal = false;
+
+        // How long to keep the outcome of a queued create for the status URI
+        @Min(1)
+        private long statusRetentionSeconds = 3600;
+
+        WriteBehindConfig() {}
+
+        public boolean enabled() { return enabled; }
+
+        public int queueCapacity() { return queueCapacity; }
+
+        public int batchSize() { return batchSize; }
+
+        public int maxBatchDelay() { return maxBatchDelay; }
+
+        public String journalFile() { return journalFile; }
+
+        public int journalSizeMb() { return journalSizeMb; }
+
+        public boolean syncJournal() { return syncJournal; }
+
+        public long statusRetentionSeconds() { return statusRetentionSeconds; }
+    }
+
+
+    // -------------------------------
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class DatabaseExecutorConfig {
+        // false: database work runs on the request thread
+        private boolean enabled = true;
+
+        // Threads running database work. More threads than pooled connections only wait for a connection
+        @Min(1)
+        @Max(1000)
+        private int threads = 10;
+
+        // Max number of requests waiting for a thread. When full, requests are rejected with 503
+        @Min(1)
+        private int queueCapacity = 100;
+
+        // Max time, in milliseconds, a request may wait for its database work, queued and running, before a 503
+        @Min(1)
+        private long timeout = 10000;
+
+        DatabaseExecutorConfig() {}
+
+        public boolean enabled() { return enabled; }
+
+        public int threads() { return threads; }
+
+        public int queueCapacity() { return queueCapacity; }
+
+        public long timeout() { return timeout; }
+    }
+}
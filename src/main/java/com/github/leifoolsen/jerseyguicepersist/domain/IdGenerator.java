@@ -0,0 +1,81 @@
+package com.github.leifoolsen.jerseyguicepersist.domain;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the ids of new entities, see {@link #nextId()}. The generator in use is set at startup
+ * from "repositoryConfig.idGenerator".
+ */
+public enum IdGenerator {
+
+    /**
+     * Random, version 4 UUID. Draws from a SecureRandom shared by all threads.
+     */
+    RANDOM {
+        @Override
+        public UUID generate() {
+            return UUID.randomUUID();
+        }
+    },
+
+    /**
+     * Time ordered, version 7 style UUID: a 48 bit millisecond timestamp followed by 74 random bits.
+     * Ids created close in time sort close together, so inserts append to the end of the primary key
+     * index instead of splitting pages all over it. The random bits come from a thread local source;
+     * these ids are unique, not unguessable.
+     */
+    TIME_ORDERED {
+        @Override
+        public UUID generate() {
+            return timeOrdered(System.currentTimeMillis(), ThreadLocalRandom.current());
+        }
+    };
+
+    /**
+     * A UUID in the canonical, lower case form of {@link UUID#toString()}
+     */
+    public static final String UUID_PATTERN = "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}";
+
+    private static final Pattern UUID_REGEX = Pattern.compile(UUID_PATTERN);
+
+    private static volatile IdGenerator current = RANDOM;
+
+    public abstract UUID generate();
+
+    /**
+     * @return a new id from the generator in use, in string form
+     */
+    public static String nextId() {
+        return current.generate().toString();
+    }
+
+    /**
+     * @return true if the id is a UUID in the form returned by {@link #nextId()}
+     */
+    public static boolean isUuid(final String id) {
+        return id != null && UUID_REGEX.matcher(id).matches();
+    }
+
+    public static IdGenerator current() {
+        return current;
+    }
+
+    public static void use(final IdGenerator generator) {
+        current = Preconditions.checkNotNull(generator, "IdGenerator may not be null");
+    }
+
+    // See: https://tools.ietf.org/html/draft-peabody-dispatch-new-uuid-format
+    static UUID timeOrdered(final long millis, final Random random) {
+        final long msb = (millis << 16)
+                | 0x7000L                              // Version 7
+                | (random.nextInt() & 0x0FFFL);        // 12 random bits
+        final long lsb = 0x8000000000000000L           // IETF variant
+                | (random.nextLong() & 0x3FFFFFFFFFFFFFFFL);
+        return new UUID(msb, lsb);
+    }
+}
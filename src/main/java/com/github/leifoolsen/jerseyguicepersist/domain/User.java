@@ -1,14 +1,18 @@
 package com.github.leifoolsen.jerseyguicepersist.domain;
 
+import org.hibernate.validator.constraints.NotBlank;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Version;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.io.Serializable;
-import java.util.UUID;
 
 @XmlRootElement
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -18,16 +22,28 @@ public class User implements Serializable {
     private static final long serialVersionUID = 3665349089500867570L;
 
 
+    /**
+     * Validation group for ids that must be UUIDs, as when ids are stored as {@code BINARY(16)},
+     * see {@link com.github.leifoolsen.jerseyguicepersist.repository.BinaryUuidCustomizer}
+     */
+    public interface UuidId {}
+
     @Id
+    @NotNull
+    @Size(max = 36)
+    @Pattern(regexp = IdGenerator.UUID_PATTERN, groups = UuidId.class, message = "must be a UUID")
     @Column(length=36)
-    private String id  = UUID.randomUUID().toString();
+    private String id  = IdGenerator.nextId();
 
     @Version
     private Long version;
 
+    @NotBlank
+    @Size(max = 255)
     @Column(unique = true)
     private String username;
 
+    @Size(max = 255)
     private String password;
     private boolean active;
 
@@ -39,10 +55,25 @@ public class User implements Serializable {
         this.active = active;
     }
 
+    /**
+     * Copy of a user, not managed by any EntityManager
+     */
+    public User(final User user) {
+        this.id = user.id;
+        this.version = user.version;
+        this.username = user.username;
+        this.password = user.password;
+        this.active = user.active;
+    }
+
     public String getId() {
         return id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public String getUsername() {
         return username;
     }
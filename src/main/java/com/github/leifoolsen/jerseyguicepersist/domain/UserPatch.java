@@ -0,0 +1,44 @@
+package com.github.leifoolsen.jerseyguicepersist.domain;
+
+import com.github.leifoolsen.jerseyguicepersist.constraint.AssertMethodAsTrue;
+
+import javax.validation.constraints.Size;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * Partial update of a {@link User}. Fields left null are not changed.
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+@AssertMethodAsTrue(value="isValid", message="At least one of active or password must be given")
+public class UserPatch implements Serializable {
+
+    private static final long serialVersionUID = -6528361263497813071L;
+
+    private Boolean active;
+
+    @Size(max = 255)
+    private String password;
+
+    protected UserPatch() {}
+
+    public UserPatch(final Boolean active, final String password) {
+        this.active = active;
+        this.password = password;
+    }
+
+    public Boolean getActive() {
+        return active;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public boolean isValid() {
+        return active != null || password != null;
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.leifoolsen.jerseyguicepersist.domain;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * Read only projection of {@link User} for list views. Created by a JPQL constructor expression,
+ * so it is never managed by a persistence context. Has no password and no version.
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class UserSummary implements Serializable {
+
+    private static final long serialVersionUID = -2153283612461385713L;
+
+    private String id;
+    private String username;
+    private boolean active;
+
+    protected UserSummary() {}
+
+    public UserSummary(final String id, final String username, final boolean active) {
+        this.id = id;
+        this.username = username;
+        this.active = active;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+}
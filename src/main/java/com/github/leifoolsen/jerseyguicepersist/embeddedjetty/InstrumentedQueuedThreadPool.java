@@ -0,0 +1,34 @@
+package com.github.leifoolsen.jerseyguicepersist.embeddedjetty;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link QueuedThreadPool} publishing {@link ThreadPoolMetrics}. With a bounded queue, a job that does not fit
+ * is rejected with {@link RejectedExecutionException}.
+ */
+public class InstrumentedQueuedThreadPool extends QueuedThreadPool {
+    private final ThreadPoolMetrics metrics;
+
+    /**
+     * @param queue job queue, null for Jetty's default unbounded queue
+     */
+    public InstrumentedQueuedThreadPool(final int maxThreads, final int minThreads, final int idleTimeout,
+                                        final BlockingQueue<Runnable> queue) {
+        super(maxThreads, minThreads, idleTimeout, queue);
+        metrics = new ThreadPoolMetrics(this::getQueueSize, this::getBusyThreads, this::getIdleThreads, this::getThreads);
+    }
+
+    @Override
+    public void execute(final Runnable job) {
+        try {
+            super.execute(metrics.timed(job));
+        }
+        catch (RejectedExecutionException e) {
+            metrics.rejected();
+            throw e;
+        }
+    }
+}
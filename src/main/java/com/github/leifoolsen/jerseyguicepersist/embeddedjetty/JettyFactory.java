@@ -7,13 +7,25 @@ import com.github.leifoolsen.jerseyguicepersist.util.SneakyThrow;
 import com.github.leifoolsen.jerseyguicepersist.util.ValidatorHelper;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.NCSARequestLog;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.server.handler.ShutdownHandler;
 import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.webapp.Configuration;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.slf4j.Logger;
@@ -21,10 +33,15 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.UriBuilder;
 import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 
 public class JettyFactory {
     private static final Logger logger = LoggerFactory.getLogger(JettyFactory.class);
@@ -41,11 +58,7 @@ public class JettyFactory {
         JettyConfig.WebAppContextConfig webAppContextConfig = jettyConfig.webAppContextConfig();
 
         // Create server
-        QueuedThreadPool threadPool = new QueuedThreadPool(threadPoolConfig.minThreads(), threadPoolConfig.maxThreads());
-        threadPool.setDaemon(threadPoolConfig.daemon());
-        if(threadPoolConfig.name() != null) threadPool.setName(threadPoolConfig.name());
-
-        final Server server = new Server(threadPool);
+        final Server server = new Server(createThreadPool(threadPoolConfig));
 
         // Configuration classes. This gives support for multiple features.
         // The annotationConfiguration is required to support annotations like @WebServlet
@@ -65,12 +78,30 @@ public class JettyFactory {
             logger.info("Annotation processing is not enabled, missing dependency on jetty-annotations.");
         }
 
-        // Connector
-        final ServerConnector connector = new ServerConnector(server);
+        // Connectors
+        final HttpConfiguration httpConfig = createHttpConfiguration(serverConnectorConfig);
+
+        final ServerConnector connector = createConnector(server, httpConfig, serverConnectorConfig);
         connector.setHost(serverConnectorConfig.host());
         connector.setPort(serverConnectorConfig.port());
-        connector.setIdleTimeout(serverConnectorConfig.idleTimeout());
         server.addConnector(connector);
+        logger.info("Connector @ {}:{}, protocols: {}", serverConnectorConfig.host(), serverConnectorConfig.port(), connector.getProtocols());
+
+        if(serverConnectorConfig.securePort() > 0) {
+            final ServerConnector secureConnector = createSecureConnector(server, httpConfig, serverConnectorConfig);
+            server.addConnector(secureConnector);
+            logger.info("Connector @ {}:{}, protocols: {}", serverConnectorConfig.host(), serverConnectorConfig.securePort(), secureConnector.getProtocols());
+        }
+
+        for (JettyConfig.ListenerConfig listener : serverConnectorConfig.listeners()) {
+            final String host = listener.host() != null ? listener.host() : serverConnectorConfig.host();
+            final ServerConnector listenerConnector = createConnector(server, httpConfig, serverConnectorConfig);
+            listenerConnector.setName(listener.name());
+            listenerConnector.setHost(host);
+            listenerConnector.setPort(listener.port());
+            server.addConnector(listenerConnector);
+            logger.info("Connector '{}' @ {}:{}, protocols: {}", listener.name(), host, listener.port(), listenerConnector.getProtocols());
+        }
 
 
         // Access log
@@ -119,6 +150,137 @@ public class JettyFactory {
     }
 
 
+    private static ThreadPool createThreadPool(final JettyConfig.ThreadPoolConfig threadPoolConfig) {
+        if(threadPoolConfig.mode() == JettyConfig.ThreadPoolConfig.Mode.VIRTUAL) {
+            final ExecutorService executor = VirtualThreadPool.newVirtualThreadPerTaskExecutor();
+            if(executor != null) {
+                logger.info("Thread pool: virtual threads");
+                return new VirtualThreadPool(executor);
+            }
+            logger.warn("Java {} has no virtual threads, using a bounded thread pool", System.getProperty("java.version"));
+        }
+
+        final BlockingQueue<Runnable> queue = threadPoolConfig.mode() == JettyConfig.ThreadPoolConfig.Mode.QUEUED
+                ? null
+                : new ArrayBlockingQueue<>(threadPoolConfig.maxQueueSize());
+
+        final QueuedThreadPool threadPool = new InstrumentedQueuedThreadPool(
+                threadPoolConfig.maxThreads(), threadPoolConfig.minThreads(), threadPoolConfig.idleTimeout(), queue);
+        threadPool.setDaemon(threadPoolConfig.daemon());
+        if(threadPoolConfig.name() != null) threadPool.setName(threadPoolConfig.name());
+
+        logger.info("Thread pool: {}..{} threads, {}", threadPoolConfig.minThreads(), threadPoolConfig.maxThreads(),
+                queue != null ? "queue of " + threadPoolConfig.maxQueueSize() + " jobs" : "unbounded queue");
+        return threadPool;
+    }
+
+    private static HttpConfiguration createHttpConfiguration(final JettyConfig.ServerConnectorConfig serverConnectorConfig) {
+        final HttpConfiguration httpConfig = new HttpConfiguration();
+        httpConfig.setOutputBufferSize(serverConnectorConfig.outputBufferSize());
+        httpConfig.setRequestHeaderSize(serverConnectorConfig.requestHeaderSize());
+        httpConfig.setResponseHeaderSize(serverConnectorConfig.responseHeaderSize());
+        httpConfig.setHeaderCacheSize(serverConnectorConfig.headerCacheSize());
+        if(serverConnectorConfig.securePort() > 0) {
+            httpConfig.setSecureScheme("https");
+            httpConfig.setSecurePort(serverConnectorConfig.securePort());
+        }
+        return httpConfig;
+    }
+
+    /**
+     * Cleartext connector, HTTP/1.1 and, with {@code http2c} set, h2c.
+     */
+    private static ServerConnector createConnector(final Server server, final HttpConfiguration httpConfig,
+                                                   final JettyConfig.ServerConnectorConfig serverConnectorConfig) {
+
+        final HttpConnectionFactory http1 = http1(httpConfig, serverConnectorConfig);
+        return serverConnectorConfig.http2c()
+                ? newServerConnector(server, serverConnectorConfig, http1,
+                        http2(new HTTP2CServerConnectionFactory(httpConfig), serverConnectorConfig))
+                : newServerConnector(server, serverConnectorConfig, http1);
+    }
+
+    /**
+     * TLS connector. With {@code http2} set, h2 or HTTP/1.1 is negotiated with ALPN.
+     */
+    private static ServerConnector createSecureConnector(final Server server, final HttpConfiguration httpConfig,
+                                                         final JettyConfig.ServerConnectorConfig serverConnectorConfig) {
+
+        final SslContextFactory sslContextFactory = new SslContextFactory();
+        sslContextFactory.setKeyStorePath(serverConnectorConfig.keyStorePath());
+        sslContextFactory.setKeyStorePassword(serverConnectorConfig.keyStorePassword());
+
+        final HttpConfiguration httpsConfig = new HttpConfiguration(httpConfig);
+        httpsConfig.addCustomizer(new SecureRequestCustomizer());
+        final HttpConnectionFactory http1 = http1(httpsConfig, serverConnectorConfig);
+
+        final ServerConnector connector;
+        if(serverConnectorConfig.http2()) {
+            // HTTP/2 black lists most of the older cipher suites. Prefer suites allowed for h2
+            sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+            sslContextFactory.setUseCipherSuitesOrder(true);
+
+            // Fails here if the ALPN implementation is not on the boot class path
+            final ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+            alpn.setDefaultProtocol(http1.getProtocol());
+
+            connector = newServerConnector(server, serverConnectorConfig,
+                    new SslConnectionFactory(sslContextFactory, alpn.getProtocol()),
+                    alpn,
+                    http2(new HTTP2ServerConnectionFactory(httpsConfig), serverConnectorConfig),
+                    http1);
+        }
+        else {
+            connector = newServerConnector(server, serverConnectorConfig,
+                    new SslConnectionFactory(sslContextFactory, http1.getProtocol()), http1);
+        }
+        connector.setHost(serverConnectorConfig.host());
+        connector.setPort(serverConnectorConfig.securePort());
+        return connector;
+    }
+
+    /**
+     * Server connector with the acceptor, selector and socket settings of the config.
+     */
+    private static ServerConnector newServerConnector(final Server server,
+                                                      final JettyConfig.ServerConnectorConfig serverConnectorConfig,
+                                                      final ConnectionFactory... factories) {
+
+        final ServerConnector connector = new ServerConnector(server,
+                serverConnectorConfig.acceptors(), serverConnectorConfig.selectors(), factories) {
+
+            // Jetty always sets TCP_NODELAY on accepted sockets
+            @Override
+            protected void configure(final Socket socket) {
+                super.configure(socket);
+                try {
+                    socket.setTcpNoDelay(serverConnectorConfig.tcpNoDelay());
+                }
+                catch (SocketException e) {
+                    logger.debug("Could not set TCP_NODELAY", e);
+                }
+            }
+        };
+        connector.setAcceptQueueSize(serverConnectorConfig.acceptQueueSize());
+        connector.setReuseAddress(serverConnectorConfig.reuseAddress());
+        connector.setIdleTimeout(serverConnectorConfig.idleTimeout());
+        return connector;
+    }
+
+    private static HttpConnectionFactory http1(final HttpConfiguration httpConfig,
+                                               final JettyConfig.ServerConnectorConfig serverConnectorConfig) {
+        final HttpConnectionFactory factory = new HttpConnectionFactory(httpConfig);
+        factory.setInputBufferSize(serverConnectorConfig.inputBufferSize());
+        return factory;
+    }
+
+    private static <T extends AbstractHTTP2ServerConnectionFactory> T http2(final T factory,
+                                                                            final JettyConfig.ServerConnectorConfig serverConnectorConfig) {
+        factory.setMaxConcurrentStreams(serverConnectorConfig.maxConcurrentStreams());
+        factory.setInitialStreamSendWindow(serverConnectorConfig.initialStreamWindow());
+        return factory;
+    }
+
     private static WebAppContext createWebApp(final JettyConfig.WebAppContextConfig webAppContextConfig) {
         // The WebAppContext is the entity that controls the environment in
         // which a web application lives and breathes.
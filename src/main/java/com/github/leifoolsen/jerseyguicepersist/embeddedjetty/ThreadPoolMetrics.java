@@ -0,0 +1,42 @@
+package com.github.leifoolsen.jerseyguicepersist.embeddedjetty;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+
+/**
+ * Metrics of the Jetty thread pool: "jetty.threadPool.queueSize", ".busyThreads", ".idleThreads" and ".threads",
+ * ".queueWait", the time a job waits for a thread, and ".rejected".
+ */
+class ThreadPoolMetrics {
+    static final String METRIC_PREFIX = "jetty.threadPool";
+
+    private final Timer queueWait = Metrics.registry().timer(MetricRegistry.name(METRIC_PREFIX, "queueWait"));
+    private final Meter rejected = Metrics.registry().meter(MetricRegistry.name(METRIC_PREFIX, "rejected"));
+
+    ThreadPoolMetrics(final Gauge<Integer> queueSize, final Gauge<Integer> busyThreads,
+                      final Gauge<Integer> idleThreads, final Gauge<Integer> threads) {
+
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "queueSize"), queueSize);
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "busyThreads"), busyThreads);
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "idleThreads"), idleThreads);
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "threads"), threads);
+    }
+
+    /**
+     * @return the job, timing its wait from now until it runs
+     */
+    Runnable timed(final Runnable job) {
+        final Timer.Context waiting = queueWait.time();
+        return () -> {
+            waiting.stop();
+            job.run();
+        };
+    }
+
+    void rejected() {
+        rejected.mark();
+    }
+}
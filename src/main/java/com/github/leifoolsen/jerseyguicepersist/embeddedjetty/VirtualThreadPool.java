@@ -0,0 +1,57 @@
+package com.github.leifoolsen.jerseyguicepersist.embeddedjetty;
+
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool running each job on a virtual thread of its own, publishing {@link ThreadPoolMetrics}.
+ * Busy threads are jobs running; the queue is jobs submitted but not yet running.
+ */
+public class VirtualThreadPool extends ExecutorThreadPool {
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger busy = new AtomicInteger();
+    private final ThreadPoolMetrics metrics;
+
+    public VirtualThreadPool(final ExecutorService virtualThreadPerTaskExecutor) {
+        super(virtualThreadPerTaskExecutor);
+        metrics = new ThreadPoolMetrics(queued::get, busy::get, () -> 0, busy::get);
+    }
+
+    /**
+     * @return {@code Executors.newVirtualThreadPerTaskExecutor()}, or null if the JDK does not have virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(final Runnable job) {
+        queued.incrementAndGet();
+        try {
+            super.execute(metrics.timed(() -> {
+                queued.decrementAndGet();
+                busy.incrementAndGet();
+                try {
+                    job.run();
+                }
+                finally {
+                    busy.decrementAndGet();
+                }
+            }));
+        }
+        catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            metrics.rejected();
+            throw e;
+        }
+    }
+}
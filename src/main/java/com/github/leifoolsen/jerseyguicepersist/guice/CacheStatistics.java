@@ -0,0 +1,119 @@
+package com.github.leifoolsen.jerseyguicepersist.guice;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.internal.identitymaps.IdentityMap;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.tools.profiler.PerformanceMonitor;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Reports the state of the EclipseLink shared (L2) cache of each persistence unit: primary, shards and read replica.
+ *
+ * Per entity: cache type, isolation, expiry, the number of cached objects and the configured size.
+ * With {@code cache.statistics = true} in the persistence unit config, cache hits, misses and hit rate
+ * are reported as well, as counted by EclipseLink's {@link PerformanceMonitor} since startup.
+ */
+@Singleton
+public class CacheStatistics {
+
+    private static final String HITS_SUFFIX = ":" + SessionProfiler.CacheHits.substring("Counter:".length());
+    private static final String MISSES_SUFFIX = ":" + SessionProfiler.CacheMisses.substring("Counter:".length());
+
+    private final ShardRouter shards;
+    private final EntityManagerRouter router;
+
+    @Inject
+    public CacheStatistics(final ShardRouter shards, final EntityManagerRouter router) {
+        this.shards = shards;
+        this.router = router;
+    }
+
+    /**
+     * @return cache state keyed by session name, then by entity name
+     */
+    public SortedMap<String, Object> snapshot() {
+        final List<EntityManagerFactory> emfs = new ArrayList<>(shards.entityManagerFactories());
+        if(router.readEntityManagerFactory() != null) {
+            emfs.add(router.readEntityManagerFactory());
+        }
+
+        final SortedMap<String, Object> result = new TreeMap<>();
+        for (EntityManagerFactory emf : emfs) {
+            if(emf.isOpen()) {
+                final AbstractSession session = (AbstractSession) JpaHelper.getServerSession(emf);
+                result.put(session.getName(), sessionStatistics(session));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Object> sessionStatistics(final AbstractSession session) {
+        final Map<String, Object> counters = session.getProfiler() instanceof PerformanceMonitor
+                ? ((PerformanceMonitor) session.getProfiler()).getOperationTimings()
+                : null;
+
+        final Map<String, Object> result = new LinkedHashMap<>();
+        if(counters != null) {
+            putHitRate(result, counter(counters, SessionProfiler.CacheHits), counter(counters, SessionProfiler.CacheMisses));
+        }
+
+        final SortedMap<String, Object> entities = new TreeMap<>();
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            if(descriptor.isAggregateDescriptor() || descriptor.isDescriptorForInterface()) {
+                continue;
+            }
+            final IdentityMap identityMap = session.getIdentityMapAccessorInstance()
+                    .getIdentityMapManager().getIdentityMap(descriptor, true);
+
+            final Map<String, Object> m = new LinkedHashMap<>();
+            m.put("type", descriptor.getIdentityMapClass().getSimpleName());
+            m.put("isolation", descriptor.getCacheIsolation().name());
+            m.put("expirySeconds", descriptor.getCacheInvalidationPolicy() instanceof TimeToLiveCacheInvalidationPolicy
+                    ? ((TimeToLiveCacheInvalidationPolicy) descriptor.getCacheInvalidationPolicy()).getTimeToLive() / 1000
+                    : 0);
+            m.put("size", identityMap != null ? identityMap.getSize() : 0);
+            m.put("maxSize", descriptor.getIdentityMapSize());
+            if(counters != null) {
+                putHitRate(m, entityCounter(counters, descriptor, HITS_SUFFIX), entityCounter(counters, descriptor, MISSES_SUFFIX));
+            }
+            entities.put(descriptor.getAlias(), m);
+        }
+        result.put("entities", entities);
+        return result;
+    }
+
+    private static void putHitRate(final Map<String, Object> m, final long hits, final long misses) {
+        m.put("hits", hits);
+        m.put("misses", misses);
+        m.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : Double.NaN);
+    }
+
+    private static long counter(final Map<String, Object> counters, final String name) {
+        final Object value = counters.get(name);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    // Per query counters are named "Counter:<query class>:<entity class>:<query name>:CacheHits"
+    private static long entityCounter(final Map<String, Object> counters, final ClassDescriptor descriptor, final String suffix) {
+        final String entity = ":" + descriptor.getJavaClassName() + ":";
+        long count = 0;
+        for (Map.Entry<String, Object> entry : counters.entrySet()) {
+            if(entry.getKey().endsWith(suffix) && entry.getKey().contains(entity) && entry.getValue() instanceof Number) {
+                count += ((Number) entry.getValue()).longValue();
+            }
+        }
+        return count;
+    }
+}
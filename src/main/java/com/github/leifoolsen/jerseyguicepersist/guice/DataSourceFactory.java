@@ -0,0 +1,73 @@
+package com.github.leifoolsen.jerseyguicepersist.guice;
+
+import com.github.leifoolsen.jerseyguicepersist.config.PersistenceUnitConfig;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import com.google.common.base.Preconditions;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+
+/**
+ * Creates a HikariCP connection pool from {@link PersistenceUnitConfig.DataSourceConfig}.
+ *
+ * The pool publishes its metrics to {@link Metrics#registry()}, prefixed with the pool name:
+ * gauges {@code pool.TotalConnections}, {@code pool.ActiveConnections}, {@code pool.IdleConnections},
+ * {@code pool.PendingConnections}, the acquire time timer {@code pool.Wait} and the connection
+ * usage histogram {@code pool.Usage}.
+ */
+public final class DataSourceFactory {
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceFactory.class);
+
+    private DataSourceFactory() {}
+
+    /**
+     * @param config the pool configuration
+     * @param jpaProperties persistence unit properties, providing the "javax.persistence.jdbc.*" connection settings
+     * @return a started connection pool
+     */
+    public static HikariDataSource create(final PersistenceUnitConfig.DataSourceConfig config, final Properties jpaProperties) {
+        Preconditions.checkNotNull(config, "DataSourceConfig may not be null");
+        return create(config, config.poolName(), jpaProperties);
+    }
+
+    /**
+     * @param poolName overrides the pool name in the configuration, e.g. to give each shard a pool of its own
+     */
+    public static HikariDataSource create(final PersistenceUnitConfig.DataSourceConfig config, final String poolName,
+                                          final Properties jpaProperties) {
+        Preconditions.checkNotNull(config, "DataSourceConfig may not be null");
+
+        final String url = jpaProperties.getProperty(PersistenceUnitProperties.JDBC_URL);
+        Preconditions.checkArgument(url != null, "Property '%s' is required", PersistenceUnitProperties.JDBC_URL);
+
+        final HikariConfig hc = new HikariConfig();
+        hc.setPoolName(poolName);
+        hc.setJdbcUrl(url);
+        hc.setDriverClassName(jpaProperties.getProperty(PersistenceUnitProperties.JDBC_DRIVER));
+        hc.setUsername(jpaProperties.getProperty(PersistenceUnitProperties.JDBC_USER));
+        hc.setPassword(jpaProperties.getProperty(PersistenceUnitProperties.JDBC_PASSWORD));
+        hc.setMinimumIdle(config.minimumIdle());
+        hc.setMaximumPoolSize(config.maximumPoolSize());
+        hc.setConnectionTimeout(config.connectionTimeout());
+        hc.setValidationTimeout(config.validationTimeout());
+        hc.setConnectionTestQuery(config.connectionTestQuery());
+        hc.setLeakDetectionThreshold(config.leakDetectionThreshold());
+        hc.setIdleTimeout(config.idleTimeout());
+        hc.setMaxLifetime(config.maxLifetime());
+        hc.setDataSourceProperties(config.dataSourceProperties());
+
+        // A pool that was never closed, e.g. in a test, leaves its metrics behind
+        final String metricPrefix = poolName + ".pool.";
+        Metrics.registry().removeMatching((name, metric) -> name.startsWith(metricPrefix));
+        hc.setMetricRegistry(Metrics.registry());
+
+        final HikariDataSource dataSource = new HikariDataSource(hc);
+        logger.info("Connection pool '{}' started, minimumIdle: {}, maximumPoolSize: {}",
+                poolName, config.minimumIdle(), config.maximumPoolSize());
+        return dataSource;
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.leifoolsen.jerseyguicepersist.guice;
+
+import com.github.leifoolsen.jerseyguicepersist.config.PersistenceUnitConfig.CacheConfig;
+import com.github.leifoolsen.jerseyguicepersist.config.PersistenceUnitConfig.EntityCacheConfig;
+import org.eclipse.persistence.config.CacheIsolationType;
+import org.eclipse.persistence.config.CacheType;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.config.ProfilerType;
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.tools.profiler.PerformanceMonitor;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies {@link CacheConfig} to a persistence unit.
+ *
+ * Cache type and size are passed to EclipseLink as the standard "eclipselink.cache.type.&lt;entity&gt;"
+ * and "eclipselink.cache.size.&lt;entity&gt;" properties. EclipseLink has no properties for isolation and
+ * expiry, so these are passed as properties of our own, and applied to the entity descriptors by this
+ * session customizer when the persistence unit is deployed.
+ */
+public class EntityCacheCustomizer implements SessionCustomizer {
+
+    static final String ISOLATION_PREFIX = "jerseyguicepersist.cache.isolation.";
+    static final String EXPIRY_PREFIX = "jerseyguicepersist.cache.expiry.";
+
+    /**
+     * Adds the persistence unit properties for the cache config. Replaces any "eclipselink.session.customizer".
+     * @param cache the cache config, may be null
+     */
+    static void configure(final CacheConfig cache, final Properties properties) {
+        if(cache == null) {
+            return;
+        }
+        for (EntityCacheConfig entity : cache.entities()) {
+            properties.put(PersistenceUnitProperties.CACHE_TYPE_ + entity.entity(), cacheType(entity.type()));
+            properties.put(PersistenceUnitProperties.CACHE_SIZE_ + entity.entity(), Integer.toString(entity.size()));
+            properties.put(ISOLATION_PREFIX + entity.entity(), entity.isolation().name());
+            properties.put(EXPIRY_PREFIX + entity.entity(), Long.toString(TimeUnit.SECONDS.toMillis(entity.expirySeconds())));
+        }
+        if(cache.statistics()) {
+            properties.put(PersistenceUnitProperties.PROFILER, ProfilerType.PerformanceMonitor);
+        }
+        properties.put(PersistenceUnitProperties.SESSION_CUSTOMIZER, EntityCacheCustomizer.class.getName());
+    }
+
+    @Override
+    public void customize(final Session session) {
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            final Object isolation = session.getProperty(ISOLATION_PREFIX + descriptor.getAlias());
+            if(isolation != null) {
+                descriptor.setCacheIsolation(CacheIsolationType.valueOf(isolation.toString()));
+            }
+            final Object expiry = session.getProperty(EXPIRY_PREFIX + descriptor.getAlias());
+            if(expiry != null && Long.parseLong(expiry.toString()) > 0) {
+                descriptor.setCacheInvalidationPolicy(new TimeToLiveCacheInvalidationPolicy(Long.parseLong(expiry.toString())));
+            }
+        }
+        if(session.getProfiler() instanceof PerformanceMonitor) {
+            // Statistics are read through GET /api/admin/cache, not dumped to the log every minute
+            ((PerformanceMonitor) session.getProfiler()).setDumpTime(Long.MAX_VALUE);
+        }
+    }
+
+    private static String cacheType(final EntityCacheConfig.Type type) {
+        switch (type) {
+            case FULL:      return CacheType.Full;
+            case WEAK:      return CacheType.Weak;
+            case SOFT:      return CacheType.Soft;
+            case HARD_WEAK: return CacheType.HardWeak;
+            case NONE:      return CacheType.NONE;
+            default:        return CacheType.SoftWeak;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.leifoolsen.jerseyguicepersist.guice;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Routes {@link #get()} to the primary or to the read (replica) persistence unit.
+ *
+ * Inside a {@link ReadOnly} method, and not inside a {@link com.google.inject.persist.Transactional}
+ * method, an EntityManager from the read persistence unit is returned. The replica EntityManager is
+ * opened when the outermost read only method is entered and closed when it returns.
+ * Everywhere else, and always when no read persistence unit is configured, the primary
+ * EntityManager managed by guice-persist is returned, starting a {@link LazyUnitOfWork} if one is pending.
+ */
+public class EntityManagerRouter implements Provider<EntityManager> {
+
+    private static final Logger logger = LoggerFactory.getLogger(EntityManagerRouter.class);
+
+    private final EntityManagerFactory readEmf;
+    private final DataSource readDataSource;
+
+    private final ThreadLocal<EntityManager> readEntityManager = new ThreadLocal<>();
+    private final ThreadLocal<Integer> writeDepth = ThreadLocal.withInitial(() -> 0);
+
+    @Inject
+    private Provider<EntityManager> primary;
+
+    @Inject
+    private LazyUnitOfWork unitOfWork;
+
+    /**
+     * @param readEmf the read persistence unit, or null to route everything to the primary persistence unit
+     * @param readDataSource pooled DataSource used by the read persistence unit, or null. Closed by {@link #close()}
+     */
+    EntityManagerRouter(final EntityManagerFactory readEmf, final DataSource readDataSource) {
+        this.readEmf = readEmf;
+        this.readDataSource = readDataSource;
+    }
+
+    @Override
+    public EntityManager get() {
+        final EntityManager em = readEntityManager.get();
+        if(em != null && writeDepth.get() == 0) {
+            return em;
+        }
+        unitOfWork.start();
+        return primary.get();
+    }
+
+    /**
+     * Like {@code get().getTransaction().isActive()} on the primary EntityManager, but does not start a
+     * pending {@link LazyUnitOfWork}: no EntityManager has been created yet, so no transaction can be active.
+     */
+    public boolean inTransaction() {
+        return !unitOfWork.pending() && primary.get().getTransaction().isActive();
+    }
+
+    /**
+     * @return the read persistence unit, or null if none is configured
+     */
+    EntityManagerFactory readEntityManagerFactory() {
+        return readEmf;
+    }
+
+    void close() {
+        if(readEmf != null && readEmf.isOpen()) {
+            readEmf.close();
+        }
+        if(readDataSource instanceof Closeable) {
+            try {
+                ((Closeable) readDataSource).close();
+            }
+            catch (IOException e) {
+                logger.warn("Failed to close read DataSource", e);
+            }
+        }
+    }
+
+    MethodInterceptor readOnlyInterceptor() {
+        return this::invokeReadOnly;
+    }
+
+    MethodInterceptor transactionalInterceptor() {
+        return this::invokeTransactional;
+    }
+
+    private Object invokeReadOnly(final MethodInvocation invocation) throws Throwable {
+        if(readEmf == null || readEntityManager.get() != null || writeDepth.get() > 0) {
+            return invocation.proceed();
+        }
+        final EntityManager em = readEmf.createEntityManager();
+        readEntityManager.set(em);
+        try {
+            return invocation.proceed();
+        }
+        finally {
+            readEntityManager.remove();
+            em.close();
+        }
+    }
+
+    private Object invokeTransactional(final MethodInvocation invocation) throws Throwable {
+        writeDepth.set(writeDepth.get() + 1);
+        try {
+            return invocation.proceed();
+        }
+        finally {
+            writeDepth.set(writeDepth.get() - 1);
+        }
+    }
+}
@@ -1,12 +1,25 @@
 package com.github.leifoolsen.jerseyguicepersist.guice;
 
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.config.RepositoryConfig;
+import com.github.leifoolsen.jerseyguicepersist.domain.IdGenerator;
+import com.github.leifoolsen.jerseyguicepersist.repository.DatabaseExecutor;
 import com.github.leifoolsen.jerseyguicepersist.repository.UserRepository;
+import com.github.leifoolsen.jerseyguicepersist.repository.UserWriteBehindQueue;
+import com.github.leifoolsen.jerseyguicepersist.repository.UsernameIndex;
 import com.google.inject.Binder;
 import com.google.inject.Module;
 
 public class GuiceModule implements Module {
     @Override
     public void configure(Binder binder) {
+        final RepositoryConfig repositoryConfig = ApplicationConfigFactory.applicationConfig().repositoryConfig();
+        IdGenerator.use(repositoryConfig.idGenerator());
+
+        binder.bind(RepositoryConfig.class).toInstance(repositoryConfig);
+        binder.bind(UsernameIndex.class).asEagerSingleton();
         binder.bind(UserRepository.class);
+        binder.bind(UserWriteBehindQueue.class).asEagerSingleton();
+        binder.bind(DatabaseExecutor.class).asEagerSingleton();
     }
 }
@@ -0,0 +1,93 @@
+package com.github.leifoolsen.jerseyguicepersist.guice;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import com.google.common.base.Preconditions;
+import com.google.inject.persist.UnitOfWork;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import javax.inject.Inject;
+
+/**
+ * Unit of work that does not create an EntityManager until one is needed.
+ *
+ * {@link #begin()} only marks the unit of work as open on the current thread. guice-persist's unit of work,
+ * and with it the primary EntityManager, is started the first time {@link EntityManagerRouter#get()} returns
+ * the primary EntityManager, or a {@link com.google.inject.persist.Transactional} method is entered.
+ * {@link #end()} closes the EntityManager, if one was created. A request that never touches the database,
+ * e.g. an error response or an admin endpoint, never creates an EntityManager.
+ *
+ * The metrics "persistence.unitOfWork.used" and "persistence.unitOfWork.unused" count units of work that
+ * did and did not create an EntityManager.
+ */
+public class LazyUnitOfWork implements UnitOfWork {
+
+    private static final String METRIC_PREFIX = "persistence.unitOfWork";
+
+    // null: no unit of work. FALSE: begun, no EntityManager yet. TRUE: EntityManager created
+    private final ThreadLocal<Boolean> started = new ThreadLocal<>();
+
+    private final Meter used = Metrics.registry().meter(MetricRegistry.name(METRIC_PREFIX, "used"));
+    private final Meter unused = Metrics.registry().meter(MetricRegistry.name(METRIC_PREFIX, "unused"));
+
+    @Inject
+    private UnitOfWork delegate;
+
+    LazyUnitOfWork() {}
+
+    @Override
+    public void begin() {
+        Preconditions.checkState(started.get() == null,
+                "Work already begun on this thread. Looks like you have called UnitOfWork.begin() twice " +
+                "without a balancing call to end() in between.");
+        started.set(false);
+    }
+
+    @Override
+    public void end() {
+        final Boolean s = started.get();
+        if(s == null) {
+            return;
+        }
+        started.remove();
+        if(s) {
+            used.mark();
+            delegate.end();
+        }
+        else {
+            unused.mark();
+        }
+    }
+
+    /**
+     * Starts guice-persist's unit of work if this unit of work is begun and has not created an EntityManager yet.
+     */
+    void start() {
+        if(pending()) {
+            started.set(true);
+            delegate.begin();
+        }
+    }
+
+    /**
+     * @return true if this unit of work is begun and has not created an EntityManager yet
+     */
+    boolean pending() {
+        return Boolean.FALSE.equals(started.get());
+    }
+
+    /**
+     * Must run outside guice-persist's transaction interceptor. Else a transaction entered before the
+     * EntityManager is created starts and ends a unit of work of its own.
+     */
+    MethodInterceptor transactionalInterceptor() {
+        return this::invokeTransactional;
+    }
+
+    private Object invokeTransactional(final MethodInvocation invocation) throws Throwable {
+        start();
+        return invocation.proceed();
+    }
+}
@@ -1,15 +1,65 @@
 package com.github.leifoolsen.jerseyguicepersist.guice;
 
+import com.github.leifoolsen.jerseyguicepersist.repository.UserQueries;
 import com.google.inject.persist.PersistService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
 import javax.inject.Singleton;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
 
 @Singleton
 public class PersistenceInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceInitializer.class);
+
+    private final PersistService service;
+    private final EntityManagerRouter router;
+    private final ShardRouter shards;
+    private DataSource dataSource;
 
     @Inject
-    public PersistenceInitializer(PersistService service) {
+    public PersistenceInitializer(PersistService service, EntityManagerRouter router, ShardRouter shards,
+                                  Provider<EntityManagerFactory> emfProvider) {
+        this.service = service;
+        this.router = router;
+        this.shards = shards;
         service.start();
+
+        // Parse the repository queries once, instead of on every call
+        UserQueries.register(emfProvider.get());
+        if(router.readEntityManagerFactory() != null) {
+            UserQueries.register(router.readEntityManagerFactory());
+        }
+        for (EntityManagerFactory shard : shards.additionalShards()) {
+            UserQueries.register(shard);
+        }
+    }
+
+    // Only bound when a pooled DataSource is configured, see PersistenceModule
+    @com.google.inject.Inject(optional = true)
+    void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Stops the persistence service, the read persistence unit and the shards, then closes the connection pool, if any.
+     */
+    public void stop() {
+        service.stop();
+        router.close();
+        shards.close();
+        if(dataSource instanceof Closeable) {
+            try {
+                ((Closeable) dataSource).close();
+            }
+            catch (IOException e) {
+                logger.warn("Failed to close DataSource", e);
+            }
+        }
     }
 }
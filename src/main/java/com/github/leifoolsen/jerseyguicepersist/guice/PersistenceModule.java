@@ -4,17 +4,131 @@ import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
 import com.github.leifoolsen.jerseyguicepersist.config.PersistenceUnitConfig;
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.google.inject.matcher.Matchers;
+import com.google.inject.persist.Transactional;
 import com.google.inject.persist.jpa.JpaPersistModule;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
 public class PersistenceModule implements Module {
 
+    private static final String SQL_LOAD_SCRIPT_SOURCE = "javax.persistence.sql-load-script-source";
+
+    private final PersistenceUnitConfig persistenceUnitConfig;
+    private final PersistenceUnitConfig readPersistenceUnitConfig;
+
+    public PersistenceModule() {
+        this(ApplicationConfigFactory.applicationConfig().persistenceUnitConfig(),
+             ApplicationConfigFactory.applicationConfig().readPersistenceUnitConfig());
+    }
+
+    /**
+     * @param persistenceUnitConfig the primary persistence unit
+     * @param readPersistenceUnitConfig optional read (replica) persistence unit, may be null
+     */
+    public PersistenceModule(final PersistenceUnitConfig persistenceUnitConfig,
+                             final PersistenceUnitConfig readPersistenceUnitConfig) {
+        this.persistenceUnitConfig = persistenceUnitConfig;
+        this.readPersistenceUnitConfig = readPersistenceUnitConfig;
+    }
+
     @Override
     public void configure(Binder binder) {
-        PersistenceUnitConfig puc = ApplicationConfigFactory.applicationConfig().persistenceUnitConfig();
+        PersistenceUnitConfig puc = persistenceUnitConfig;
+        Properties properties = puc.properties();
+        EntityCacheCustomizer.configure(puc.cache(), properties);
+
+        DataSource dataSource = pooledDataSource(puc, properties);
+        if(dataSource != null) {
+            binder.bind(DataSource.class).toInstance(dataSource);
+        }
+
+        // Bound before JpaPersistModule, so that a lazy unit of work is started outside guice-persist's
+        // transaction interceptor
+        LazyUnitOfWork lazyUnitOfWork = new LazyUnitOfWork();
+        binder.bind(LazyUnitOfWork.class).toInstance(lazyUnitOfWork);
+        binder.bindInterceptor(Matchers.any(), Matchers.annotatedWith(Transactional.class), lazyUnitOfWork.transactionalInterceptor());
+
         binder.install(
                 new JpaPersistModule(puc.name())
-                        .properties(puc.properties())
+                        .properties(properties)
         );
+
+        // Route @ReadOnly methods to the read persistence unit. Must be bound after JpaPersistModule,
+        // so that the router's @Transactional interceptor runs inside guice-persist's transaction
+        EntityManagerRouter router = readPersistenceUnitConfig != null
+                ? createRouter(readPersistenceUnitConfig)
+                : new EntityManagerRouter(null, null);
+
+        binder.bind(EntityManagerRouter.class).toInstance(router);
+        binder.bindInterceptor(Matchers.any(), Matchers.annotatedWith(ReadOnly.class), router.readOnlyInterceptor());
+        binder.bindInterceptor(Matchers.any(), Matchers.annotatedWith(Transactional.class), router.transactionalInterceptor());
+
+        binder.bind(ShardRouter.class).toInstance(createShards(puc));
+
         binder.bind(PersistenceInitializer.class).asEagerSingleton();
     }
+
+    private static ShardRouter createShards(final PersistenceUnitConfig puc) {
+        final List<EntityManagerFactory> shards = new ArrayList<>();
+        final List<DataSource> dataSources = new ArrayList<>();
+
+        for (int i = 0; i < puc.shardUrls().size(); i++) {
+            final String name = puc.name() + "-shard-" + (i + 1);
+            final Properties properties = puc.properties();
+            EntityCacheCustomizer.configure(puc.cache(), properties);
+            properties.put(PersistenceUnitProperties.JDBC_URL, puc.shardUrls().get(i));
+            properties.put(PersistenceUnitProperties.SESSION_NAME, name);
+            // Sample data is loaded into shard 0 only
+            properties.remove(SQL_LOAD_SCRIPT_SOURCE);
+
+            if(puc.dataSource() != null && puc.dataSource().enabled()) {
+                final DataSource dataSource = DataSourceFactory.create(puc.dataSource(), name, properties);
+                dataSources.add(dataSource);
+                removeJdbcProperties(properties, dataSource);
+            }
+            shards.add(Persistence.createEntityManagerFactory(puc.name(), properties));
+        }
+        return new ShardRouter(shards, dataSources);
+    }
+
+    private static EntityManagerRouter createRouter(final PersistenceUnitConfig readConfig) {
+        Properties properties = readConfig.properties();
+        EntityCacheCustomizer.configure(readConfig.cache(), properties);
+
+        // Two EntityManagerFactories for the same persistence unit must have different session names
+        if(!properties.containsKey(PersistenceUnitProperties.SESSION_NAME)) {
+            properties.put(PersistenceUnitProperties.SESSION_NAME, readConfig.name() + "-read");
+        }
+        DataSource dataSource = pooledDataSource(readConfig, properties);
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(readConfig.name(), properties);
+        return new EntityManagerRouter(emf, dataSource);
+    }
+
+    /**
+     * Hands a pooled DataSource to EclipseLink instead of letting it pool connections itself.
+     * @return the DataSource, or null if no pool is configured
+     */
+    private static DataSource pooledDataSource(final PersistenceUnitConfig puc, final Properties properties) {
+        if(puc.dataSource() == null || !puc.dataSource().enabled()) {
+            return null;
+        }
+        DataSource dataSource = DataSourceFactory.create(puc.dataSource(), properties);
+        removeJdbcProperties(properties, dataSource);
+        return dataSource;
+    }
+
+    private static void removeJdbcProperties(final Properties properties, final DataSource dataSource) {
+        properties.remove(PersistenceUnitProperties.JDBC_DRIVER);
+        properties.remove(PersistenceUnitProperties.JDBC_URL);
+        properties.remove(PersistenceUnitProperties.JDBC_USER);
+        properties.remove(PersistenceUnitProperties.JDBC_PASSWORD);
+        properties.put(PersistenceUnitProperties.NON_JTA_DATASOURCE, dataSource);
+    }
 }
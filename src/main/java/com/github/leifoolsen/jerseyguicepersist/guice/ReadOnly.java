@@ -0,0 +1,20 @@
+package com.github.leifoolsen.jerseyguicepersist.guice;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as read only. While the method runs, {@link EntityManagerRouter} hands out an
+ * EntityManager for the read (replica) persistence unit, if one is configured.
+ *
+ * A read only method called from within a {@link com.google.inject.persist.Transactional} method
+ * stays on the primary persistence unit, so that the transaction sees its own writes.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ReadOnly {
+}
@@ -0,0 +1,209 @@
+package com.github.leifoolsen.jerseyguicepersist.guice;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Hash partitioning of entities over shards. Shard 0 is the primary persistence unit; shards 1..N-1 are
+ * the databases listed in "persistenceUnitConfig.shardUrls". An id is mapped to a shard by
+ * {@link #shardOf(String)}: a consistent hash of the id, so adding a shard moves about 1/N of the ids.
+ *
+ * Without shards every method runs its work on the current EntityManager, see {@link EntityManagerRouter},
+ * inside the caller's transaction, if any. With shards the work runs on an EntityManager of its own
+ * per shard, and {@link #inTransaction(int, Function)} commits on return; a caller's
+ * {@link com.google.inject.persist.Transactional} transaction does not span shards.
+ */
+public class ShardRouter {
+    private static final Logger logger = LoggerFactory.getLogger(ShardRouter.class);
+
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final List<EntityManagerFactory> shards;
+    private final List<DataSource> dataSources;
+    private final ExecutorService executor;
+
+    @Inject
+    private Provider<EntityManagerFactory> primary;
+
+    @Inject
+    private EntityManagerRouter router;
+
+    /**
+     * @param shards shards 1..N-1, empty if not sharded
+     * @param dataSources pooled DataSources used by the shards, if any. Closed by {@link #close()}
+     */
+    ShardRouter(final List<EntityManagerFactory> shards, final List<DataSource> dataSources) {
+        this.shards = ImmutableList.copyOf(shards);
+        this.dataSources = ImmutableList.copyOf(dataSources);
+        this.executor = shards.isEmpty()
+                ? null
+                : Executors.newFixedThreadPool(
+                        Math.max(shardCount(), 2 * Runtime.getRuntime().availableProcessors()),
+                        new ThreadFactoryBuilder().setNameFormat("shard-scatter-%d").setDaemon(true).build());
+    }
+
+    public boolean enabled() {
+        return !shards.isEmpty();
+    }
+
+    public int shardCount() {
+        return shards.size() + 1;
+    }
+
+    /**
+     * @return the shard, in [0, shardCount), holding the entity with the given id
+     */
+    public int shardOf(final String id) {
+        if(!enabled()) {
+            return 0;
+        }
+        Preconditions.checkNotNull(id, "id may not be null");
+        return Hashing.consistentHash(HASH.hashString(id, StandardCharsets.UTF_8), shardCount());
+    }
+
+    /**
+     * @return the EntityManagerFactory of each shard, in shard order
+     */
+    public List<EntityManagerFactory> entityManagerFactories() {
+        return ImmutableList.<EntityManagerFactory>builder()
+                .add(primary.get())
+                .addAll(shards)
+                .build();
+    }
+
+    /**
+     * Runs work on the given shard, without starting a transaction.
+     */
+    public <T> T withEntityManager(final int shard, final Function<EntityManager, T> work) {
+        if(!enabled()) {
+            return work.apply(router.get());
+        }
+        final EntityManager em = entityManagerFactory(shard).createEntityManager();
+        try {
+            return work.apply(em);
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Runs work in a transaction on the given shard. The transaction is committed when the work returns,
+     * and rolled back if it throws.
+     */
+    public <T> T inTransaction(final int shard, final Function<EntityManager, T> work) {
+        if(!enabled()) {
+            return work.apply(router.get());
+        }
+        return withEntityManager(shard, em -> {
+            final EntityTransaction tx = em.getTransaction();
+            tx.begin();
+            try {
+                final T result = work.apply(em);
+                tx.commit();
+                return result;
+            }
+            finally {
+                if(tx.isActive()) {
+                    tx.rollback();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs work on all shards in parallel, and waits for all of them.
+     *
+     * @param work receives the shard number and an EntityManager for that shard
+     * @return the result from each shard, in shard order
+     */
+    public <T> List<T> scatter(final BiFunction<Integer, EntityManager, T> work) {
+        if(!enabled()) {
+            return Collections.singletonList(work.apply(0, router.get()));
+        }
+
+        final List<Future<T>> futures = new ArrayList<>(shardCount());
+        for (int shard = 1; shard < shardCount(); shard++) {
+            final int s = shard;
+            futures.add(executor.submit(() -> withEntityManager(s, em -> work.apply(s, em))));
+        }
+
+        final List<T> results = new ArrayList<>(shardCount());
+        results.add(withEntityManager(0, em -> work.apply(0, em)));  // Shard 0 on the calling thread
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shards", e);
+        }
+        catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private EntityManagerFactory entityManagerFactory(final int shard) {
+        return shard == 0 ? primary.get() : shards.get(shard - 1);
+    }
+
+    /**
+     * @return shards 1..N-1
+     */
+    List<EntityManagerFactory> additionalShards() {
+        return shards;
+    }
+
+    void close() {
+        if(executor != null) {
+            executor.shutdownNow();
+        }
+        for (EntityManagerFactory emf : shards) {
+            if(emf.isOpen()) {
+                emf.close();
+            }
+        }
+        for (DataSource dataSource : dataSources) {
+            if(dataSource instanceof Closeable) {
+                try {
+                    ((Closeable) dataSource).close();
+                }
+                catch (IOException e) {
+                    logger.warn("Failed to close shard DataSource", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.leifoolsen.jerseyguicepersist.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application wide metric registry.
+ *
+ * Jetty, the Guice container and the JAX-RS container are created independently of each other,
+ * so the registry is held in {@link SharedMetricRegistries} rather than in one of the containers.
+ * See: http://metrics.dropwizard.io/
+ */
+public final class Metrics {
+
+    public static final String REGISTRY_NAME = "jersey2-guicepersist";
+
+    private static final double DURATION_FACTOR = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+
+    private Metrics() {}
+
+    public static MetricRegistry registry() {
+        return SharedMetricRegistries.getOrCreate(REGISTRY_NAME);
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge previously registered with the same name,
+     * e.g. by a component that has been restarted.
+     */
+    public static <T> Gauge<T> registerGauge(final String name, final Gauge<T> gauge) {
+        registry().remove(name);
+        return registry().register(name, gauge);
+    }
+
+    /**
+     * @return a snapshot of all metrics, keyed by metric name. Durations are in milliseconds.
+     */
+    public static SortedMap<String, Object> snapshot() {
+        final SortedMap<String, Object> result = new TreeMap<>();
+        for (Map.Entry<String, Metric> entry : registry().getMetrics().entrySet()) {
+            result.put(entry.getKey(), toMap(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static Object toMap(final Metric metric) {
+        final Map<String, Object> m = new LinkedHashMap<>();
+        if(metric instanceof Gauge) {
+            return ((Gauge) metric).getValue();
+        }
+        else if(metric instanceof Counter) {
+            m.put("count", ((Counter) metric).getCount());
+        }
+        else if(metric instanceof Timer) {
+            putMetered(m, (Timer) metric);
+            putSnapshot(m, ((Timer) metric).getSnapshot(), DURATION_FACTOR);
+        }
+        else if(metric instanceof Meter) {
+            putMetered(m, (Meter) metric);
+        }
+        else if(metric instanceof Histogram) {
+            m.put("count", ((Histogram) metric).getCount());
+            putSnapshot(m, ((Histogram) metric).getSnapshot(), 1.0);
+        }
+        return m;
+    }
+
+    private static void putMetered(final Map<String, Object> m, final Metered metered) {
+        m.put("count", metered.getCount());
+        m.put("meanRate", metered.getMeanRate());
+        m.put("m1Rate", metered.getOneMinuteRate());
+        m.put("m5Rate", metered.getFiveMinuteRate());
+    }
+
+    private static void putSnapshot(final Map<String, Object> m, final Snapshot snapshot, final double factor) {
+        m.put("min", snapshot.getMin() * factor);
+        m.put("max", snapshot.getMax() * factor);
+        m.put("mean", snapshot.getMean() * factor);
+        m.put("p50", snapshot.getMedian() * factor);
+        m.put("p95", snapshot.get95thPercentile() * factor);
+        m.put("p99", snapshot.get99thPercentile() * factor);
+    }
+}
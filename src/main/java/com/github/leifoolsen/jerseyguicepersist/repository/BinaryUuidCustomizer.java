@@ -0,0 +1,83 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import org.eclipse.persistence.config.DescriptorCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.DirectToFieldMapping;
+import org.eclipse.persistence.mappings.converters.Converter;
+import org.eclipse.persistence.sessions.Session;
+
+import javax.persistence.EntityManagerFactory;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Stores the string UUID id of an entity in a {@code BINARY(16)} column instead of a 36 character VARCHAR.
+ * The entity, JPQL parameters and the REST API keep the string form. Enable it per entity with the
+ * persistence unit property {@code "eclipselink.descriptor.customizer.User = <this class>"}.
+ *
+ * The column type changes, so it is for a new schema; existing VARCHAR ids are not converted.
+ * Only UUIDs can be stored: {@link UserRepository} treats any other id as not found on reads, and as
+ * invalid on writes, see {@link #isApplied(EntityManagerFactory, Class)}.
+ */
+public class BinaryUuidCustomizer implements DescriptorCustomizer {
+
+    static final String ID_ATTRIBUTE = "id";
+
+    @Override
+    public void customize(final ClassDescriptor descriptor) {
+        final DirectToFieldMapping mapping = (DirectToFieldMapping) descriptor.getMappingForAttributeName(ID_ATTRIBUTE);
+        mapping.setConverter(new UuidConverter());
+        mapping.getField().setColumnDefinition("BINARY(16)");
+        mapping.getField().setType(byte[].class);
+    }
+
+    /**
+     * @return true if the id of the entity is stored by this customizer in the given persistence unit
+     */
+    public static boolean isApplied(final EntityManagerFactory emf, final Class<?> entityClass) {
+        final ClassDescriptor descriptor = JpaHelper.getServerSession(emf).getDescriptor(entityClass);
+        final DatabaseMapping mapping = descriptor != null ? descriptor.getMappingForAttributeName(ID_ATTRIBUTE) : null;
+        return mapping instanceof DirectToFieldMapping
+                && ((DirectToFieldMapping) mapping).getConverter() instanceof UuidConverter;
+    }
+
+    /**
+     * Converts between the string form of a UUID and its 16 byte big-endian form
+     */
+    public static class UuidConverter implements Converter {
+
+        private static final long serialVersionUID = 4153713577254413071L;
+
+        @Override
+        public Object convertObjectValueToDataValue(final Object objectValue, final Session session) {
+            if(objectValue == null) {
+                return null;
+            }
+            final UUID uuid = UUID.fromString(objectValue.toString());
+            return ByteBuffer.allocate(16)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits())
+                    .array();
+        }
+
+        @Override
+        public Object convertDataValueToObjectValue(final Object dataValue, final Session session) {
+            if(dataValue == null) {
+                return null;
+            }
+            final ByteBuffer b = ByteBuffer.wrap((byte[]) dataValue);
+            return new UUID(b.getLong(), b.getLong()).toString();
+        }
+
+        @Override
+        public boolean isMutable() {
+            return false;
+        }
+
+        @Override
+        public void initialize(final DatabaseMapping mapping, final Session session) {
+        }
+    }
+}
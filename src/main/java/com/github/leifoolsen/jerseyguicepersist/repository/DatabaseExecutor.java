@@ -0,0 +1,148 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.leifoolsen.jerseyguicepersist.config.RepositoryConfig;
+import com.github.leifoolsen.jerseyguicepersist.guice.LazyUnitOfWork;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.persist.UnitOfWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded executor for database work, sized independently of the HTTP thread pool.
+ *
+ * Each task runs in a unit of work of its own, begun and ended on the executor thread, so the task's
+ * EntityManager is bound to the thread that uses it. When all threads are busy, tasks wait in a queue of
+ * {@code queueCapacity}; when the queue is full, {@link #submit(Callable)} rejects the task.
+ * With {@code lazyUnitOfWork} set in the repository config, the unit of work is a {@link LazyUnitOfWork}.
+ *
+ * When disabled, tasks run on the calling thread.
+ */
+@Singleton
+public class DatabaseExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseExecutor.class);
+
+    private static final String METRIC_PREFIX = "repository.databaseExecutor";
+
+    private final UnitOfWork unitOfWork;
+    private final RepositoryConfig.DatabaseExecutorConfig config;
+    private final ThreadPoolExecutor pool;
+
+    private final Meter rejected = Metrics.registry().meter(MetricRegistry.name(METRIC_PREFIX, "rejected"));
+    private final Timer queueWait = Metrics.registry().timer(MetricRegistry.name(METRIC_PREFIX, "queueWait"));
+
+    @Inject
+    public DatabaseExecutor(final UnitOfWork unitOfWork, final LazyUnitOfWork lazyUnitOfWork, final RepositoryConfig config) {
+        this(config.lazyUnitOfWork() ? lazyUnitOfWork : unitOfWork, config.databaseExecutorConfig());
+    }
+
+    public DatabaseExecutor(final UnitOfWork unitOfWork, final RepositoryConfig.DatabaseExecutorConfig config) {
+        this.unitOfWork = unitOfWork;
+        this.config = config;
+
+        if(!config.enabled()) {
+            pool = null;
+            return;
+        }
+
+        pool = new ThreadPoolExecutor(config.threads(), config.threads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.queueCapacity()),
+                new ThreadFactoryBuilder().setNameFormat("database-%d").setDaemon(true).build());
+
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "queueSize"), (Gauge<Integer>) () -> pool.getQueue().size());
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "activeThreads"), (Gauge<Integer>) pool::getActiveCount);
+        logger.info("Database executor started with {} threads", config.threads());
+    }
+
+    public boolean enabled() {
+        return config.enabled();
+    }
+
+    /**
+     * @return max time, in milliseconds, a caller should wait for a task, queued and running
+     */
+    public long timeout() {
+        return config.timeout();
+    }
+
+    /**
+     * Runs work in a unit of work on an executor thread. Cancelling the returned future before the
+     * work has started removes it from the queue, freeing its slot; work that has started is not interrupted.
+     *
+     * @throws RejectedExecutionException if the queue is full, or the executor is stopped
+     */
+    public <T> ListenableFuture<T> submit(final Callable<T> work) {
+        if(!config.enabled()) {
+            try {
+                return Futures.immediateFuture(inUnitOfWork(work));
+            }
+            catch (Exception e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+
+        final Timer.Context waiting = queueWait.time();
+        final ListenableFutureTask<T> task = ListenableFutureTask.create(() -> {
+            waiting.stop();
+            return inUnitOfWork(work);
+        });
+        try {
+            pool.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            rejected.mark();
+            throw e;
+        }
+        // A cancelled task is skipped when dequeued, but holds its queue slot until then
+        task.addListener(() -> {
+            if(task.isCancelled()) {
+                pool.remove(task);
+            }
+        }, MoreExecutors.directExecutor());
+        return task;
+    }
+
+    /**
+     * Stops accepting work and waits for running and queued work to complete.
+     */
+    public void stop() {
+        if(pool == null) {
+            return;
+        }
+        pool.shutdown();
+        try {
+            if(!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Database executor did not terminate. {} tasks dropped", pool.shutdownNow().size());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> T inUnitOfWork(final Callable<T> work) throws Exception {
+        unitOfWork.begin();
+        try {
+            return work.call();
+        }
+        finally {
+            unitOfWork.end();
+        }
+    }
+}
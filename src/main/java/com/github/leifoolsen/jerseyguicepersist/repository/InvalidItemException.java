@@ -0,0 +1,19 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+/**
+ * Thrown by the iterator given to {@link UserRepository#persistAll(Iterable, int)} for an item it can not turn
+ * into a user, e.g. a request body item of the wrong type. The item is reported as INVALID, and the iteration
+ * continues if the iterator has more items.
+ */
+public class InvalidItemException extends RuntimeException {
+
+    private static final long serialVersionUID = -2071514926212338761L;
+
+    public InvalidItemException(final String message) {
+        super(message);
+    }
+
+    public InvalidItemException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Outcome of looking up one id in a multi-get, see {@link UserRepository#findByIds(java.util.List)}
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class LookupResult {
+
+    private String id;
+    private boolean found;
+    private User user;
+
+    protected LookupResult() {}
+
+    LookupResult(final String id, final User user) {
+        this.id = id;
+        this.found = user != null;
+        this.user = user;
+    }
+
+    public String getId() { return id; }
+
+    public boolean isFound() { return found; }
+
+    /**
+     * @return the user, null if not found
+     */
+    public User getUser() { return user; }
+}
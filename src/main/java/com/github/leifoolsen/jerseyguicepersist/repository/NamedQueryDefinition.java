@@ -0,0 +1,140 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JPQL query that is parsed once, when it is registered with an {@link EntityManagerFactory} as a
+ * named query, instead of on every call to {@code createQuery}.
+ *
+ * Every execution is timed. The timer, named {@code repository.query.<query name>}, also counts executions.
+ *
+ * Update and delete statements are defined with result type {@link Void} and run by
+ * {@link Execution#executeUpdate()}.
+ *
+ * @param <R> the result type
+ */
+public final class NamedQueryDefinition<R> {
+    private static final String METRIC_PREFIX = "repository.query";
+
+    private final String name;
+    private final String jpql;
+    private final Class<R> resultClass;
+    private final Map<String, Object> hints;
+    private final Timer timer;
+
+    NamedQueryDefinition(final String name, final String jpql, final Class<R> resultClass) {
+        this(name, jpql, resultClass, ImmutableMap.of());
+    }
+
+    NamedQueryDefinition(final String name, final String jpql, final Class<R> resultClass, final Map<String, Object> hints) {
+        this.name = Preconditions.checkNotNull(name, "Query name may not be null");
+        this.jpql = Preconditions.checkNotNull(jpql, "JPQL may not be null");
+        this.resultClass = Preconditions.checkNotNull(resultClass, "Result class may not be null");
+        this.hints = ImmutableMap.copyOf(hints);
+        this.timer = Metrics.registry().timer(MetricRegistry.name(METRIC_PREFIX, name));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String jpql() {
+        return jpql;
+    }
+
+    /**
+     * Parses the query and adds it, with its hints, to the named queries of the given factory.
+     */
+    void register(final EntityManagerFactory emf) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            final Query query = isUpdate() ? em.createQuery(jpql) : em.createQuery(jpql, resultClass);
+            for (Map.Entry<String, Object> hint : hints.entrySet()) {
+                query.setHint(hint.getKey(), hint.getValue());
+            }
+            emf.addNamedQuery(name, query);
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    /**
+     * @return an execution of the registered query in the given EntityManager
+     */
+    public Execution<R> on(final EntityManager em) {
+        return new Execution<>(isUpdate() ? em.createNamedQuery(name) : em.createNamedQuery(name, resultClass), timer);
+    }
+
+    private boolean isUpdate() {
+        return resultClass == Void.class;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + jpql;
+    }
+
+
+    public static final class Execution<R> {
+        private final Query query;
+        private final Timer timer;
+
+        private Execution(final Query query, final Timer timer) {
+            this.query = query;
+            this.timer = timer;
+        }
+
+        public <T> Execution<R> bind(final QueryParameter<T> parameter, final T value) {
+            query.setParameter(parameter.name(), value);
+            return this;
+        }
+
+        public Execution<R> maxResults(final int maxResults) {
+            query.setMaxResults(maxResults);
+            return this;
+        }
+
+        public Execution<R> hint(final String hint, final Object value) {
+            query.setHint(hint, value);
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public List<R> list() {
+            try (Timer.Context ignored = timer.time()) {
+                return query.getResultList();
+            }
+        }
+
+        /**
+         * Untyped single result, e.g. an EclipseLink cursor when the query has a cursor hint.
+         * The timing covers opening the cursor only.
+         */
+        public Object singleResult() {
+            try (Timer.Context ignored = timer.time()) {
+                return query.getSingleResult();
+            }
+        }
+
+        /**
+         * Runs an update or delete statement.
+         * @return number of rows updated or deleted
+         */
+        public int executeUpdate() {
+            try (Timer.Context ignored = timer.time()) {
+                return query.executeUpdate();
+            }
+        }
+    }
+}
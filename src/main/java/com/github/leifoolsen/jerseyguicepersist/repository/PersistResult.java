@@ -0,0 +1,54 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Outcome of persisting one item in a bulk operation, or of a create queued by {@link UserWriteBehindQueue}
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class PersistResult {
+
+    public enum Status {
+        QUEUED,
+        CREATED,
+        CONFLICT,
+        INVALID,
+        // A queued create the database kept failing for, given up on
+        FAILED
+    }
+
+    private int index;
+    private String id;
+    private String username;
+    private Status status;
+    private String message;
+
+    protected PersistResult() {}
+
+    PersistResult(final int index, final String id, final String username, final Status status, final String message) {
+        this.index = index;
+        this.id = id;
+        this.username = username;
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * @return zero based position of the item in the bulk request, 0 for a queued create
+     */
+    public int getIndex() { return index; }
+
+    public String getId() { return id; }
+
+    public String getUsername() { return username; }
+
+    public Status getStatus() { return status; }
+
+    /**
+     * @return reason for CONFLICT, INVALID or FAILED, null if QUEUED or CREATED
+     */
+    public String getMessage() { return message; }
+}
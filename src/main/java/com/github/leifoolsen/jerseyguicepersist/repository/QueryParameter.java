@@ -0,0 +1,30 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A named query parameter. The type parameter makes {@link NamedQueryDefinition.Execution#bind(QueryParameter, Object)}
+ * reject values of the wrong type at compile time.
+ *
+ * @param <T> the type of the parameter value
+ */
+public final class QueryParameter<T> {
+    private final String name;
+
+    private QueryParameter(final String name) {
+        this.name = Preconditions.checkNotNull(name, "Parameter name may not be null");
+    }
+
+    public static <T> QueryParameter<T> named(final String name) {
+        return new QueryParameter<>(name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return ":" + name;
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.leifoolsen.jerseyguicepersist.config.RepositoryConfig;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, concurrent read-through cache for {@link UserRepository#findById(String)}. Entries are
+ * evicted by size and by time since they were loaded.
+ *
+ * Entries are keyed on id and carry the entity's {@code @Version}; an entry is never replaced by an
+ * older version of the same user. A load that races with an invalidation of the same id is not cached:
+ * callers take a {@link #stamp(String)} before reading from the database and pass it to {@link #put(User, long)}.
+ * Stamps are striped over the ids, so a write only discards concurrent loads of ids in the same stripe.
+ *
+ * The cache holds copies, and hands out copies, so a cached user is never an entity managed by, or
+ * modified through, the EntityManager of a request.
+ */
+@Singleton
+public class UserCache {
+
+    private static final String METRIC_PREFIX = "repository.userCache";
+    private static final int STAMP_STRIPES = 1024; // Power of two
+
+    private final Cache<String, User> cache;
+    private final AtomicLongArray invalidations = new AtomicLongArray(STAMP_STRIPES);
+
+    @Inject
+    public UserCache(final RepositoryConfig config) {
+        final RepositoryConfig.CacheConfig cacheConfig = config.userCacheConfig();
+
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(cacheConfig.enabled() ? cacheConfig.maximumSize() : 0)
+                .expireAfterWrite(cacheConfig.expireAfterWriteSeconds(), TimeUnit.SECONDS)
+                .concurrencyLevel(cacheConfig.concurrencyLevel())
+                .recordStats()
+                .build();
+
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "size"), (Gauge<Long>) cache::size);
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "hits"), (Gauge<Long>) () -> stats().hitCount());
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "misses"), (Gauge<Long>) () -> stats().missCount());
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "evictions"), (Gauge<Long>) () -> stats().evictionCount());
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "hitRate"), (Gauge<Double>) () -> stats().hitRate());
+    }
+
+    /**
+     * @return a copy of the cached user, or null on a cache miss
+     */
+    public User get(final String id) {
+        final User cached = id != null ? cache.getIfPresent(id) : null;
+        return cached != null ? new User(cached) : null;
+    }
+
+    /**
+     * @return a stamp to pass to {@link #put(User, long)} when the user with the given id has been read from the database
+     */
+    public long stamp(final String id) {
+        return invalidations.get(stripe(id));
+    }
+
+    /**
+     * Caches a copy of a user read from the database, unless the user's id was invalidated after the
+     * stamp was taken, or a newer version of the user is already cached.
+     */
+    public void put(final User user, final long stamp) {
+        if(user == null || stamp != stamp(user.getId())) {
+            return;
+        }
+        final User copy = new User(user);
+        final ConcurrentMap<String, User> map = cache.asMap();
+        while (true) {
+            final User cached = map.putIfAbsent(copy.getId(), copy);
+            if(cached == null) {
+                break;
+            }
+            if(version(cached) >= version(copy) || map.replace(copy.getId(), cached, copy)) {
+                break;
+            }
+        }
+        if(stamp != stamp(user.getId())) {
+            // Lost a race with invalidate(). Do not leave a possibly stale entry behind
+            cache.invalidate(user.getId());
+        }
+    }
+
+    public void invalidate(final String id) {
+        invalidations.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < STAMP_STRIPES; i++) {
+            invalidations.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static int stripe(final String id) {
+        final int h = id.hashCode();
+        return (h ^ (h >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    private static long version(final User user) {
+        return MoreObjects.firstNonNull(user.getVersion(), 0L);
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserSummary;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.ResultSetConcurrency;
+import org.eclipse.persistence.config.ResultSetType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Registry of the named queries used by {@link UserRepository}, with their typed parameters.
+ * The queries are registered once per EntityManagerFactory by
+ * {@link com.github.leifoolsen.jerseyguicepersist.guice.PersistenceInitializer}.
+ */
+public final class UserQueries {
+    private static final Logger logger = LoggerFactory.getLogger(UserQueries.class);
+
+    public static final QueryParameter<String> ID = QueryParameter.named("id");
+    public static final QueryParameter<String> USERNAME = QueryParameter.named("username");
+    public static final QueryParameter<String> AFTER_USERNAME = QueryParameter.named("afterUsername");
+    public static final QueryParameter<String> AFTER_ID = QueryParameter.named("afterId");
+    public static final QueryParameter<String> PREFIX = QueryParameter.named("prefix");
+    public static final QueryParameter<Long> VERSION = QueryParameter.named("version");
+    public static final QueryParameter<Boolean> ACTIVE = QueryParameter.named("active");
+    public static final QueryParameter<String> PASSWORD = QueryParameter.named("password");
+    public static final QueryParameter<Collection<String>> IDS = QueryParameter.named("ids");
+    public static final QueryParameter<Collection<String>> USERNAMES = QueryParameter.named("usernames");
+
+    public static final NamedQueryDefinition<User> FIND_BY_NAME = new NamedQueryDefinition<>(
+            "User.findByName",
+            "select u from User u where u.username like :username",
+            User.class);
+
+    public static final NamedQueryDefinition<User> FIND_BY_IDS = new NamedQueryDefinition<>(
+            "User.findByIds",
+            "select u from User u where u.id in :ids",
+            User.class);
+
+    public static final NamedQueryDefinition<User> FIND_BY_USERNAMES = new NamedQueryDefinition<>(
+            "User.findByUsernames",
+            "select u from User u where u.username in :usernames",
+            User.class);
+
+    public static final NamedQueryDefinition<Long> FIND_VERSION_BY_ID = new NamedQueryDefinition<>(
+            "User.findVersionById",
+            "select u.version from User u where u.id = :id",
+            Long.class);
+
+    public static final NamedQueryDefinition<User> FIND_FIRST_PAGE_BY_NAME = new NamedQueryDefinition<>(
+            "User.findFirstPageByName",
+            "select u from User u where u.username like :username order by u.username, u.id",
+            User.class);
+
+    public static final NamedQueryDefinition<User> FIND_NEXT_PAGE_BY_NAME = new NamedQueryDefinition<>(
+            "User.findNextPageByName",
+            "select u from User u where u.username like :username " +
+                    "and (u.username > :afterUsername or (u.username = :afterUsername and u.id > :afterId)) " +
+                    "order by u.username, u.id",
+            User.class);
+
+    // Constructor expressions return unmanaged objects; READ_ONLY also keeps EclipseLink from building clones
+    public static final NamedQueryDefinition<UserSummary> FIND_FIRST_SUMMARY_PAGE_BY_NAME = new NamedQueryDefinition<>(
+            "User.findFirstSummaryPageByName",
+            "select new " + UserSummary.class.getName() + "(u.id, u.username, u.active) from User u " +
+                    "where u.username like :username order by u.username, u.id",
+            UserSummary.class,
+            ImmutableMap.of(QueryHints.READ_ONLY, HintValues.TRUE));
+
+    public static final NamedQueryDefinition<UserSummary> FIND_NEXT_SUMMARY_PAGE_BY_NAME = new NamedQueryDefinition<>(
+            "User.findNextSummaryPageByName",
+            "select new " + UserSummary.class.getName() + "(u.id, u.username, u.active) from User u " +
+                    "where u.username like :username " +
+                    "and (u.username > :afterUsername or (u.username = :afterUsername and u.id > :afterId)) " +
+                    "order by u.username, u.id",
+            UserSummary.class,
+            ImmutableMap.of(QueryHints.READ_ONLY, HintValues.TRUE));
+
+    public static final NamedQueryDefinition<User> STREAM_BY_NAME = new NamedQueryDefinition<>(
+            "User.streamByName",
+            "select u from User u where u.username like :username order by u.username, u.id",
+            User.class,
+            ImmutableMap.of(
+                    QueryHints.READ_ONLY, HintValues.TRUE,
+                    QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE,
+                    QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly,
+                    QueryHints.RESULT_SET_CONCURRENCY, ResultSetConcurrency.ReadOnly));
+
+    public static final NamedQueryDefinition<String> FIND_USERNAMES_BY_PREFIX = new NamedQueryDefinition<>(
+            "User.findUsernamesByPrefix",
+            "select u.username from User u where u.username like :prefix escape '\\' order by u.username",
+            String.class);
+
+    public static final NamedQueryDefinition<String> FIND_EXISTING_IDS = new NamedQueryDefinition<>(
+            "User.findExistingIds",
+            "select u.id from User u where u.id in :ids",
+            String.class);
+
+    public static final NamedQueryDefinition<String> FIND_EXISTING_USERNAMES = new NamedQueryDefinition<>(
+            "User.findExistingUsernames",
+            "select u.username from User u where u.username in :usernames",
+            String.class);
+
+    public static final NamedQueryDefinition<String> FIND_USERNAME_BY_ID = new NamedQueryDefinition<>(
+            "User.findUsernameById",
+            "select u.username from User u where u.id = :id",
+            String.class);
+
+    // Optimistic in-place updates. Zero rows updated means the user does not exist, or the version has moved on
+
+    public static final NamedQueryDefinition<Void> UPDATE_ACTIVE = new NamedQueryDefinition<>(
+            "User.updateActive",
+            "update User u set u.active = :active, u.version = u.version + 1 " +
+                    "where u.id = :id and u.version = :version",
+            Void.class);
+
+    public static final NamedQueryDefinition<Void> UPDATE_PASSWORD = new NamedQueryDefinition<>(
+            "User.updatePassword",
+            "update User u set u.password = :password, u.version = u.version + 1 " +
+                    "where u.id = :id and u.version = :version",
+            Void.class);
+
+    public static final NamedQueryDefinition<Void> UPDATE_ACTIVE_AND_PASSWORD = new NamedQueryDefinition<>(
+            "User.updateActiveAndPassword",
+            "update User u set u.active = :active, u.password = :password, u.version = u.version + 1 " +
+                    "where u.id = :id and u.version = :version",
+            Void.class);
+
+    public static final NamedQueryDefinition<Void> REPLACE = new NamedQueryDefinition<>(
+            "User.replace",
+            "update User u set u.username = :username, u.password = :password, u.active = :active, " +
+                    "u.version = u.version + 1 where u.id = :id and u.version = :version",
+            Void.class);
+
+    public static final List<NamedQueryDefinition<?>> ALL = ImmutableList.of(
+            FIND_BY_NAME,
+            FIND_BY_IDS,
+            FIND_BY_USERNAMES,
+            FIND_VERSION_BY_ID,
+            FIND_FIRST_PAGE_BY_NAME,
+            FIND_NEXT_PAGE_BY_NAME,
+            FIND_FIRST_SUMMARY_PAGE_BY_NAME,
+            FIND_NEXT_SUMMARY_PAGE_BY_NAME,
+            STREAM_BY_NAME,
+            FIND_USERNAMES_BY_PREFIX,
+            FIND_EXISTING_IDS,
+            FIND_EXISTING_USERNAMES,
+            FIND_USERNAME_BY_ID,
+            UPDATE_ACTIVE,
+            UPDATE_PASSWORD,
+            UPDATE_ACTIVE_AND_PASSWORD,
+            REPLACE);
+
+    private UserQueries() {}
+
+    /**
+     * Parses all queries and registers them as named queries with the given factory.
+     * Fails fast on a query that does not parse.
+     */
+    public static void register(final EntityManagerFactory emf) {
+        for (NamedQueryDefinition<?> query : ALL) {
+            query.register(emf);
+        }
+        logger.debug("Registered {} named queries", ALL.size());
+    }
+}
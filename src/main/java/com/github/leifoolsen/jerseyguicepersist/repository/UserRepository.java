@@ -1,42 +1,842 @@
 package com.github.leifoolsen.jerseyguicepersist.repository;
 
+import com.github.leifoolsen.jerseyguicepersist.config.RepositoryConfig;
+import com.github.leifoolsen.jerseyguicepersist.domain.IdGenerator;
 import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserPatch;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserSummary;
+import com.github.leifoolsen.jerseyguicepersist.guice.EntityManagerRouter;
+import com.github.leifoolsen.jerseyguicepersist.guice.ReadOnly;
+import com.github.leifoolsen.jerseyguicepersist.guice.ShardRouter;
 import com.github.leifoolsen.jerseyguicepersist.util.StringUtil;
+import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.inject.persist.Transactional;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.ScrollableCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import javax.inject.Provider;
 import javax.inject.Singleton;
+import javax.persistence.EntityExistsException;
 import javax.persistence.EntityManager;
-import javax.persistence.TypedQuery;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.groups.Default;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Singleton
 public class UserRepository {
 
-    private Provider<EntityManager> emProvider;
+    private static final Logger logger = LoggerFactory.getLogger(UserRepository.class);
+
+    private static final Comparator<User> BY_USERNAME_AND_ID =
+            Comparator.comparing(User::getUsername).thenComparing(User::getId);
+    private static final Comparator<UserSummary> SUMMARY_BY_USERNAME_AND_ID =
+            Comparator.comparing(UserSummary::getUsername).thenComparing(UserSummary::getId);
+
+    private EntityManagerRouter emProvider;
+    private RepositoryConfig config;
+    private UserCache userCache;
+    private UsernameIndex usernameIndex;
+    private ShardRouter shards;
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    // Resolved on first use, when the persistence service has started
+    private final Supplier<Boolean> uuidIds = Suppliers.memoize(
+            () -> BinaryUuidCustomizer.isApplied(shards.entityManagerFactories().get(0), User.class));
 
     @Inject
-    public UserRepository(Provider<EntityManager> emProvider) {
+    public UserRepository(EntityManagerRouter emProvider, RepositoryConfig config, UserCache userCache,
+                          UsernameIndex usernameIndex, ShardRouter shards) {
         this.emProvider = emProvider;
+        this.config = config;
+        this.userCache = userCache;
+        this.usernameIndex = usernameIndex;
+        this.shards = shards;
     }
 
+    /**
+     * @throws EntityExistsException if the username is taken by a user on another shard
+     */
     @Transactional
     public void persist(final User user) {
-        getEntityManager().persist(user);
+        if(uuidIds.get()) {
+            validate(user, User.UuidId.class);
+        }
+        checkUsernameFreeOnOtherShards(shards.shardOf(user.getId()), user.getUsername());
+        shards.inTransaction(shards.shardOf(user.getId()), em -> {
+            em.persist(user);
+            return null;
+        });
+        userCache.invalidate(user.getId());
+    }
+
+    /**
+     * Partial update as a single {@code update ... where id = :id and version = :version} statement; the user is
+     * not read first. Only the fields set in the patch are changed, and the version is incremented.
+     * Like any JPQL bulk update, it bypasses the persistence context: a copy of the user already managed
+     * by the caller's EntityManager keeps its old state.
+     *
+     * The user cache is invalidated after commit, so a concurrent read can not cache the old row again.
+     * Since this method commits, it can not join an active transaction.
+     *
+     * @param version the version the caller expects the user to have
+     * @return the new version, or null if there is no user with the given id and version
+     * @throws ConstraintViolationException if the patch is not valid
+     */
+    public Long update(final String id, final long version, final UserPatch patch) {
+        Preconditions.checkNotNull(patch, "patch may not be null");
+        validate(patch);
+        checkNoActiveTransaction("update");
+        if(!isPossibleId(id)) {
+            return null;
+        }
+
+        final Long newVersion = updateInTransaction(id, version, patch);
+        if(newVersion != null) {
+            userCache.invalidate(id);
+        }
+        return newVersion;
+    }
+
+    @Transactional
+    Long updateInTransaction(final String id, final long version, final UserPatch patch) {
+
+        final NamedQueryDefinition<Void> statement = patch.getActive() == null
+                ? UserQueries.UPDATE_PASSWORD
+                : patch.getPassword() == null ? UserQueries.UPDATE_ACTIVE : UserQueries.UPDATE_ACTIVE_AND_PASSWORD;
+
+        final int rows = shards.inTransaction(shards.shardOf(id), em -> {
+            final NamedQueryDefinition.Execution<Void> execution = statement.on(em)
+                    .bind(UserQueries.ID, id)
+                    .bind(UserQueries.VERSION, version);
+            if(patch.getActive() != null) {
+                execution.bind(UserQueries.ACTIVE, patch.getActive());
+            }
+            if(patch.getPassword() != null) {
+                execution.bind(UserQueries.PASSWORD, patch.getPassword());
+            }
+            return execution.executeUpdate();
+        });
+        return updated(version, rows);
+    }
+
+    /**
+     * Full update of username, password and active, as a single version checked statement.
+     * With the {@link UsernameIndex} enabled the old username is read first, to keep the index current.
+     * The user cache and the index are updated after commit; a rolled back replace leaves both untouched.
+     * Since this method commits, it can not join an active transaction.
+     *
+     * @param version the version the caller expects the user to have
+     * @return the new version, or null if there is no user with the given id and version
+     * @throws ConstraintViolationException if the user is not valid
+     * @throws EntityExistsException if the username is taken by another user
+     */
+    public Long replace(final String id, final long version, final User user) {
+        Preconditions.checkNotNull(user, "user may not be null");
+        validate(user);
+        checkNoActiveTransaction("replace");
+        if(!isPossibleId(id)) {
+            return null;
+        }
+        checkUsernameFreeOnOtherShards(shards.shardOf(id), user.getUsername());
+
+        // If the username changes between this read and the update, so does the version, and the update fails
+        final List<String> oldUsername = usernameIndex.enabled()
+                ? shards.withEntityManager(shards.shardOf(id), em -> UserQueries.FIND_USERNAME_BY_ID.on(em).bind(UserQueries.ID, id).list())
+                : Collections.<String>emptyList();
+
+        final Long newVersion = replaceInTransaction(id, version, user);
+        if(newVersion != null) {
+            userCache.invalidate(id);
+            if(!oldUsername.isEmpty() && !oldUsername.get(0).equals(user.getUsername())) {
+                usernameIndex.remove(oldUsername.get(0));
+                usernameIndex.add(user.getUsername());
+            }
+        }
+        return newVersion;
+    }
+
+    @Transactional
+    Long replaceInTransaction(final String id, final long version, final User user) {
+        final int shard = shards.shardOf(id);
+        final int rows;
+        try {
+            rows = shards.inTransaction(shard, em -> UserQueries.REPLACE.on(em)
+                    .bind(UserQueries.ID, id)
+                    .bind(UserQueries.VERSION, version)
+                    .bind(UserQueries.USERNAME, user.getUsername())
+                    .bind(UserQueries.PASSWORD, user.getPassword())
+                    .bind(UserQueries.ACTIVE, user.isActive())
+                    .executeUpdate());
+        }
+        catch (PersistenceException e) {
+            if(isIntegrityConstraintViolation(e)) {
+                throw new EntityExistsException("Username already exists: '" + user.getUsername() + "'", e);
+            }
+            throw e;
+        }
+
+        return updated(version, rows);
+    }
+
+    private static Long updated(final long version, final int rows) {
+        return rows == 0 ? null : version + 1;
+    }
+
+    /**
+     * The unique constraint on username is per database, so with shards it only covers the shard written to.
+     * The other shards are checked before a single user write. Two concurrent writes of the same username to
+     * different shards may both pass the check.
+     *
+     * @throws EntityExistsException if a user on another shard has the username
+     */
+    private void checkUsernameFreeOnOtherShards(final int shard, final String username) {
+        if(!shards.enabled() || username == null) {
+            return;
+        }
+        final List<List<String>> existing = shards.scatter((s, em) -> s == shard
+                ? Collections.<String>emptyList()
+                : UserQueries.FIND_EXISTING_USERNAMES.on(em)
+                        .bind(UserQueries.USERNAMES, Collections.singletonList(username))
+                        .list());
+        if(!Iterables.isEmpty(Iterables.concat(existing))) {
+            throw new EntityExistsException("Username already exists: '" + username + "'");
+        }
+    }
+
+    /**
+     * @return false if there can be no user with the id, i.e. the id is null, or ids are stored as UUIDs
+     *         and the id is not one. Such an id is never sent to the database
+     */
+    private boolean isPossibleId(final String id) {
+        return id != null && (!uuidIds.get() || IdGenerator.isUuid(id));
+    }
+
+    private void checkNoActiveTransaction(final String operation) {
+        Preconditions.checkState(!emProvider.inTransaction(),
+                "%s commits before updating the user cache and can not join an active transaction", operation);
+    }
+
+    private <T> void validate(final T bean, final Class<?>... groups) {
+        final Set<ConstraintViolation<T>> violations = validator.validate(bean, groups);
+        if(!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+    }
+
+    /**
+     * Persists users in chunks of {@link RepositoryConfig#batchCommitSize()}.
+     * @see #persistAll(Iterable, int)
+     */
+    public List<PersistResult> persistAll(final Iterable<User> users) {
+        return persistAll(users, config.batchCommitSize());
+    }
+
+    /**
+     * Persists users in chunks, one transaction per chunk. The users are pulled from the iterable one
+     * chunk at a time, so a lazily parsed request body is never held in memory as a whole. Inserts in a
+     * chunk are sent as JDBC batches, see "eclipselink.jdbc.batch-writing".
+     *
+     * Each user is reported as CREATED, INVALID (bean validation failed, the database rejected a value, or the
+     * iterator threw {@link InvalidItemException} for the item) or CONFLICT (id or username already exists, or
+     * is repeated in the request). Since this method commits, it can not join an active transaction.
+     *
+     * @param users the users to persist
+     * @param chunkSize number of users per commit
+     * @return one result per user, in iteration order
+     */
+    public List<PersistResult> persistAll(final Iterable<User> users, final int chunkSize) {
+        Preconditions.checkNotNull(users, "users may not be null");
+        Preconditions.checkArgument(chunkSize > 0, "chunkSize must be greater than 0");
+
+        final EntityManager em = getEntityManager();
+        Preconditions.checkState(!em.getTransaction().isActive(),
+                "persistAll commits in chunks and can not join an active transaction");
+
+        if(shards.enabled()) {
+            return persistAllSharded(users, chunkSize);
+        }
+
+        final List<PersistResult> results = new ArrayList<>();
+        final List<User> chunk = new ArrayList<>(chunkSize);
+        final List<Integer> indexes = new ArrayList<>(chunkSize);
+        final Iterator<User> it = users.iterator();
+
+        for (int index = 0; it.hasNext(); index++) {
+            final User user = next(it, index, results);
+            if(user == null) {
+                continue;
+            }
+            indexes.add(index);
+            chunk.add(user);
+            if(chunk.size() == chunkSize) {
+                results.addAll(persistChunk(em, chunk, indexes));
+                chunk.clear();
+                indexes.clear();
+            }
+        }
+        if(!chunk.isEmpty()) {
+            results.addAll(persistChunk(em, chunk, indexes));
+        }
+        results.sort(Comparator.comparingInt(PersistResult::getIndex));
+        return results;
+    }
+
+    /**
+     * @return the next user, or null if the iterator could not read the item. The item is then added to the
+     *         results as INVALID
+     */
+    private static User next(final Iterator<User> it, final int index, final List<PersistResult> results) {
+        try {
+            return it.next();
+        }
+        catch (InvalidItemException e) {
+            results.add(new PersistResult(index, null, null, PersistResult.Status.INVALID, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Users are collected in one chunk per shard; a chunk is committed to its shard when it is full.
+     */
+    private List<PersistResult> persistAllSharded(final Iterable<User> users, final int chunkSize) {
+        final List<List<User>> chunks = new ArrayList<>();
+        final List<List<Integer>> indexes = new ArrayList<>();
+        for (int shard = 0; shard < shards.shardCount(); shard++) {
+            chunks.add(new ArrayList<>(chunkSize));
+            indexes.add(new ArrayList<>(chunkSize));
+        }
+
+        // Usernames in chunks not yet committed, which the username check of another shard's chunk can not see
+        final Set<String> pendingUsernames = new HashSet<>();
+
+        final List<PersistResult> results = new ArrayList<>();
+        final Iterator<User> it = users.iterator();
+        for (int index = 0; it.hasNext(); index++) {
+            final User user = next(it, index, results);
+            if(user == null) {
+                continue;
+            }
+            if(user.getUsername() != null && !pendingUsernames.add(user.getUsername())) {
+                results.add(result(index, user, PersistResult.Status.CONFLICT, "Duplicate id or username in request"));
+                continue;
+            }
+            final int shard = user.getId() != null ? shards.shardOf(user.getId()) : 0;
+            chunks.get(shard).add(user);
+            indexes.get(shard).add(index);
+            if(chunks.get(shard).size() == chunkSize) {
+                results.addAll(persistChunk(shard, chunks.get(shard), indexes.get(shard), pendingUsernames));
+            }
+        }
+        for (int shard = 0; shard < shards.shardCount(); shard++) {
+            if(!chunks.get(shard).isEmpty()) {
+                results.addAll(persistChunk(shard, chunks.get(shard), indexes.get(shard), pendingUsernames));
+            }
+        }
+        results.sort(Comparator.comparingInt(PersistResult::getIndex));
+        return results;
+    }
+
+    private List<PersistResult> persistChunk(final int shard, final List<User> chunk, final List<Integer> indexes,
+                                             final Set<String> pendingUsernames) {
+        final List<PersistResult> results = shards.withEntityManager(shard, em -> persistChunk(em, chunk, indexes));
+        for (User user : chunk) {
+            pendingUsernames.remove(user.getUsername());
+        }
+        chunk.clear();
+        indexes.clear();
+        return results;
+    }
+
+    /**
+     * @param indexes position in the request of each user in the chunk
+     */
+    private List<PersistResult> persistChunk(final EntityManager em, final List<User> chunk, final List<Integer> indexes) {
+        final PersistResult[] results = new PersistResult[chunk.size()];
+        final Set<String> ids = new HashSet<>();
+        final Set<String> usernames = new HashSet<>();
+        final List<Integer> candidates = new ArrayList<>();
+
+        for (int i = 0; i < chunk.size(); i++) {
+            final User user = chunk.get(i);
+            final Set<ConstraintViolation<User>> violations = uuidIds.get()
+                    ? validator.validate(user, Default.class, User.UuidId.class)
+                    : validator.validate(user);
+            if(!violations.isEmpty()) {
+                results[i] = result(indexes.get(i), user, PersistResult.Status.INVALID, violationsMessage(violations));
+            }
+            else if(!ids.add(user.getId()) || !usernames.add(user.getUsername())) {
+                results[i] = result(indexes.get(i), user, PersistResult.Status.CONFLICT, "Duplicate id or username in request");
+            }
+            else {
+                candidates.add(i);
+            }
+        }
+
+        final List<User> toPersist = new ArrayList<>(candidates.size());
+        if(!candidates.isEmpty()) {
+            // Two queries per chunk rather than one lookup per user
+            final Set<String> existingIds = new HashSet<>(UserQueries.FIND_EXISTING_IDS.on(em)
+                    .bind(UserQueries.IDS, ids)
+                    .list());
+
+            // The unique constraint only covers this shard; usernames on the other shards are checked here
+            final Set<String> existingUsernames = new HashSet<>();
+            for (List<String> existing : shards.scatter((shard, e) -> UserQueries.FIND_EXISTING_USERNAMES.on(e)
+                    .bind(UserQueries.USERNAMES, usernames)
+                    .list())) {
+                existingUsernames.addAll(existing);
+            }
+
+            for (Integer i : candidates) {
+                final User user = chunk.get(i);
+                if(existingIds.contains(user.getId())) {
+                    results[i] = result(indexes.get(i), user, PersistResult.Status.CONFLICT, "Id already exists");
+                }
+                else if(existingUsernames.contains(user.getUsername())) {
+                    results[i] = result(indexes.get(i), user, PersistResult.Status.CONFLICT, "Username already exists");
+                }
+                else {
+                    toPersist.add(user);
+                    results[i] = result(indexes.get(i), user, PersistResult.Status.CREATED, null);
+                }
+            }
+        }
+
+        for (User user : toPersist) {
+            userCache.invalidate(user.getId());
+        }
+
+        if(!toPersist.isEmpty() && commit(em, toPersist) != null) {
+            // A concurrent insert, or a value the database rejects, made the chunk fail. Retry one by one to find the users
+            logger.debug("Chunk at index {} failed with a constraint violation. Retrying one by one", indexes.get(0));
+            for (Integer i : candidates) {
+                final User user = chunk.get(i);
+                if(results[i].getStatus() != PersistResult.Status.CREATED) {
+                    continue;
+                }
+                final String sqlState = commit(em, Collections.singletonList(user));
+                if(sqlState != null) {
+                    results[i] = isIntegrityConstraintViolation(sqlState)
+                            ? result(indexes.get(i), user, PersistResult.Status.CONFLICT, "Id or username already exists")
+                            : result(indexes.get(i), user, PersistResult.Status.INVALID, "Rejected by the database, SQL state " + sqlState);
+                }
+            }
+        }
+        em.clear();
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return null if committed, else the SQL state of an integrity constraint violation (class 23) or of a
+     *         data exception (class 22), e.g. a value too long for its column
+     * @throws PersistenceException if the commit failed for any other reason
+     */
+    private static String commit(final EntityManager em, final List<User> users) {
+        final EntityTransaction tx = em.getTransaction();
+        tx.begin();
+        try {
+            for (User user : users) {
+                em.persist(user);
+            }
+            tx.commit();
+            return null;
+        }
+        catch (PersistenceException e) {
+            if(tx.isActive()) {
+                tx.rollback();
+            }
+            em.clear();
+            final String sqlState = sqlState(e);
+            if(sqlState != null && (sqlState.startsWith("22") || isIntegrityConstraintViolation(sqlState))) {
+                return sqlState;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isIntegrityConstraintViolation(final Throwable t) {
+        return isIntegrityConstraintViolation(sqlState(t));
+    }
+
+    // SQL state class 23: integrity constraint violation
+    private static boolean isIntegrityConstraintViolation(final String sqlState) {
+        return sqlState != null && sqlState.startsWith("23");
+    }
+
+    private static String sqlState(final Throwable t) {
+        for (Throwable cause : Throwables.getCausalChain(t)) {
+            if(cause instanceof SQLException) {
+                return ((SQLException) cause).getSQLState();
+            }
+        }
+        return null;
+    }
+
+    private static String escapeLike(final String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static PersistResult result(final int index, final User user, final PersistResult.Status status, final String message) {
+        return new PersistResult(index, user.getId(), user.getUsername(), status, message);
+    }
+
+    private static String violationsMessage(final Set<ConstraintViolation<User>> violations) {
+        final List<String> messages = new ArrayList<>();
+        for (ConstraintViolation<User> cv : violations) {
+            messages.add(cv.getPropertyPath() + ": " + cv.getMessage());
+        }
+        Collections.sort(messages);
+        return Joiner.on("; ").join(messages);
     }
 
+    /**
+     * Read-through {@link UserCache}. The cache is bypassed inside a transaction, so that a
+     * transaction reads its own (possibly uncommitted) writes and never caches them.
+     * With a read persistence unit configured, a miss is loaded from the replica, which may lag the primary.
+     */
+    @ReadOnly
     public User findById(final String id) {
-        return getEntityManager().find(User.class, id);
+        if(!isPossibleId(id)) {
+            return null;
+        }
+        final int shard = shards.shardOf(id);
+        if(emProvider.inTransaction()) {
+            return shards.withEntityManager(shard, em -> em.find(User.class, id));
+        }
+
+        User user = userCache.get(id);
+        if(user == null) {
+            final long stamp = userCache.stamp(id);
+            user = shards.withEntityManager(shard, em -> em.find(User.class, id));
+            userCache.put(user, stamp);
+        }
+        return user;
+    }
+
+    /**
+     * Multi-get. Cached users are served from the {@link UserCache}; the rest are read with
+     * {@code select ... where id in (...)} queries of at most {@link RepositoryConfig#inListChunkSize()} ids each,
+     * with all shards queried in parallel.
+     * Users read from the database are added to the cache, unless called inside a transaction.
+     *
+     * @param ids the ids to look up; repeated ids are looked up once
+     * @return one result per id, in the given order. An id with no user has a result with {@code found == false}
+     */
+    @ReadOnly
+    public List<LookupResult> findByIds(final List<String> ids) {
+        Preconditions.checkNotNull(ids, "ids may not be null");
+
+        final boolean useCache = !emProvider.inTransaction();
+
+        final Map<String, User> found = new HashMap<>();
+        final Set<String> missing = new LinkedHashSet<>();
+        for (String id : ids) {
+            final User cached = useCache ? userCache.get(id) : null;
+            if(cached != null) {
+                found.put(id, cached);
+            }
+            else if(isPossibleId(id)) {
+                missing.add(id);
+            }
+        }
+
+        final Map<String, Long> stamps = new HashMap<>();
+        for (String id : missing) {
+            stamps.put(id, userCache.stamp(id));
+        }
+        final List<List<User>> loaded = missing.isEmpty()
+                ? Collections.<List<User>>emptyList()
+                : shards.scatter((shard, em) -> {
+                    final List<String> shardIds = missing.stream()
+                            .filter(id -> shards.shardOf(id) == shard)
+                            .collect(Collectors.toList());
+                    final List<User> users = new ArrayList<>(shardIds.size());
+                    for (List<String> chunk : Iterables.partition(shardIds, config.inListChunkSize())) {
+                        users.addAll(UserQueries.FIND_BY_IDS.on(em).bind(UserQueries.IDS, chunk).list());
+                    }
+                    return users;
+                });
+
+        for (User user : Iterables.concat(loaded)) {
+            found.put(user.getId(), user);
+            final Long stamp = stamps.get(user.getId());
+            if(useCache && stamp != null) {
+                userCache.put(user, stamp);
+            }
+        }
+
+        final List<LookupResult> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            results.add(new LookupResult(id, found.get(id)));
+        }
+        return results;
+    }
+
+    /**
+     * Version-only lookup, for conditional requests. Answered from the cache when the user is cached,
+     * otherwise by a query that reads the version column only; no entity is built.
+     *
+     * @return the current version of the user, or null if there is no user with the given id
+     */
+    @ReadOnly
+    public Long findVersionById(final String id) {
+        if(!isPossibleId(id)) {
+            return null;
+        }
+        final User cached = userCache.get(id);
+        if(cached != null) {
+            return cached.getVersion();
+        }
+        final List<Long> versions = shards.withEntityManager(shards.shardOf(id),
+                em -> UserQueries.FIND_VERSION_BY_ID.on(em).bind(UserQueries.ID, id).list());
+        return versions.isEmpty() ? null : versions.get(0);
     }
 
+    /**
+     * With shards, all shards are queried in parallel, and the results are merged in username order.
+     */
+    @ReadOnly
     public List<User> findByName(final String username) {
-        TypedQuery<User> q = getEntityManager()
-                .createQuery("select u from User u where u.username like :username", User.class)
-                .setParameter("username", MoreObjects.firstNonNull(StringUtil.blankToNull(username), "%"));
+        final String pattern = MoreObjects.firstNonNull(StringUtil.blankToNull(username), "%");
+        if(!shards.enabled()) {
+            return UserQueries.FIND_BY_NAME.on(getEntityManager())
+                    .bind(UserQueries.USERNAME, pattern)
+                    .list();
+        }
+        return merge(shards.scatter((shard, em) -> UserQueries.FIND_FIRST_PAGE_BY_NAME.on(em)
+                        .bind(UserQueries.USERNAME, pattern)
+                        .list()),
+                BY_USERNAME_AND_ID, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Keyset (seek) pagination. Returns at most {@code limit} users, ordered by username and id, positioned
+     * after the given (username, id) key. No OFFSET is used, so the cost of a page does not grow with depth.
+     *
+     * A plain prefix pattern, e.g. "S%", is answered from the {@link UsernameIndex} when it is enabled:
+     * the page of usernames is taken from the index, and only those users are read, by username.
+     * Other patterns are matched with LIKE in the database.
+     *
+     * @param username a LIKE pattern, e.g. "S%"
+     * @param afterUsername username of the last user on the previous page, or null for the first page
+     * @param afterId id of the last user on the previous page, or null for the first page
+     * @param limit max number of users to return
+     * @return a page of users
+     */
+    @ReadOnly
+    public List<User> findPageByName(final String username, final String afterUsername, final String afterId, final int limit) {
+        Preconditions.checkArgument(limit > 0, "limit must be greater than 0");
+
+        final String pattern = MoreObjects.firstNonNull(StringUtil.blankToNull(username), "%");
+
+        final String prefix = literalPrefix(pattern);
+        if(prefix != null && usernameIndex.enabled()) {
+            return findByUsernames(usernameIndex.findByPrefix(prefix, afterUsername, limit));
+        }
+
+        return findPage(UserQueries.FIND_FIRST_PAGE_BY_NAME, UserQueries.FIND_NEXT_PAGE_BY_NAME, BY_USERNAME_AND_ID,
+                pattern, afterUsername, afterId, limit);
+    }
+
+    /**
+     * @return the users with the given usernames, in the given order. A username with no user is skipped
+     */
+    private List<User> findByUsernames(final List<String> usernames) {
+        if(usernames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Map<String, User> found = new HashMap<>();
+        for (List<User> users : shards.scatter((shard, em) -> {
+            final List<User> shardUsers = new ArrayList<>();
+            for (List<String> chunk : Iterables.partition(usernames, config.inListChunkSize())) {
+                shardUsers.addAll(UserQueries.FIND_BY_USERNAMES.on(em).bind(UserQueries.USERNAMES, chunk).list());
+            }
+            return shardUsers;
+        })) {
+            for (User user : users) {
+                found.put(user.getUsername(), user);
+            }
+        }
+
+        final List<User> result = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            final User user = found.get(username);
+            if(user != null) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the prefix of a LIKE pattern of the form "prefix%", or null if the pattern has other wildcards
+     */
+    private static String literalPrefix(final String pattern) {
+        final String prefix = pattern.substring(0, pattern.length() - 1);
+        return pattern.endsWith("%") && prefix.indexOf('%') < 0 && prefix.indexOf('_') < 0 && prefix.indexOf('\\') < 0
+                ? prefix
+                : null;
+    }
+
+    /**
+     * Same keyset pagination as {@link #findPageByName(String, String, String, int)}, but returns
+     * {@link UserSummary} projections. Only the projected columns are read, and no entities are
+     * built, registered in the persistence context or cloned for change tracking.
+     */
+    @ReadOnly
+    public List<UserSummary> findSummaryPageByName(final String username, final String afterUsername,
+                                                   final String afterId, final int limit) {
+        Preconditions.checkArgument(limit > 0, "limit must be greater than 0");
+
+        return findPage(UserQueries.FIND_FIRST_SUMMARY_PAGE_BY_NAME, UserQueries.FIND_NEXT_SUMMARY_PAGE_BY_NAME,
+                SUMMARY_BY_USERNAME_AND_ID, MoreObjects.firstNonNull(StringUtil.blankToNull(username), "%"),
+                afterUsername, afterId, limit);
+    }
+
+    /**
+     * Runs a keyset page query pair, see {@link #findPageByName(String, String, String, int)}.
+     * With shards, each shard returns its next page and the pages are merged.
+     *
+     * @param firstPage query for the first page, takes the username pattern
+     * @param nextPage query for the following pages, also takes the (username, id) key of the previous page
+     * @param order the order of both queries, used to merge the shard pages
+     */
+    private <T> List<T> findPage(final NamedQueryDefinition<T> firstPage, final NamedQueryDefinition<T> nextPage,
+                                 final Comparator<? super T> order, final String pattern,
+                                 final String afterUsername, final String afterId, final int limit) {
+        return merge(shards.scatter((shard, em) -> {
+            if(afterUsername == null) {
+                return firstPage.on(em)
+                        .bind(UserQueries.USERNAME, pattern)
+                        .maxResults(limit)
+                        .list();
+            }
+            return nextPage.on(em)
+                    .bind(UserQueries.USERNAME, pattern)
+                    .bind(UserQueries.AFTER_USERNAME, afterUsername)
+                    .bind(UserQueries.AFTER_ID, MoreObjects.firstNonNull(afterId, ""))
+                    .maxResults(limit)
+                    .list();
+        }), order, limit);
+    }
+
+    /**
+     * Type-ahead. Answered from the in-memory {@link UsernameIndex} when it is enabled, else by the database.
+     * The prefix is matched literally; LIKE wildcards in the prefix have no special meaning.
+     *
+     * @return up to {@code limit} usernames starting with the given prefix, in ascending order
+     */
+    @ReadOnly
+    public List<String> findUsernamesByPrefix(final String prefix, final int limit) {
+        Preconditions.checkArgument(limit > 0, "limit must be greater than 0");
+
+        final String p = MoreObjects.firstNonNull(prefix, "");
+        if(usernameIndex.enabled()) {
+            return usernameIndex.findByPrefix(p, limit);
+        }
+        return merge(shards.scatter((shard, em) -> UserQueries.FIND_USERNAMES_BY_PREFIX.on(em)
+                .bind(UserQueries.PREFIX, escapeLike(p) + "%")
+                .maxResults(limit)
+                .list()), Comparator.<String>naturalOrder(), limit);
+    }
+
+    /**
+     * Streams users, ordered by username and id, to the given consumer as rows are read from the database.
+     * A forward only, read only scrollable cursor is used, so the users are neither collected in a list nor
+     * registered in the persistence context. Memory use is bounded by the JDBC fetch size.
+     * With shards, a cursor is opened on each shard and the rows are merged in username order.
+     *
+     * @param username a LIKE pattern, e.g. "S%"
+     * @param fetchSize JDBC fetch size, number of rows to fetch per database round trip
+     * @param consumer receives each user
+     */
+    @ReadOnly
+    public void forEachByName(final String username, final int fetchSize, final Consumer<User> consumer) {
+        Preconditions.checkArgument(fetchSize > 0, "fetchSize must be greater than 0");
+        Preconditions.checkNotNull(consumer, "consumer may not be null");
+
+        final String pattern = MoreObjects.firstNonNull(StringUtil.blankToNull(username), "%");
+        if(!shards.enabled()) {
+            ScrollableCursor cursor = openCursor(getEntityManager(), pattern, fetchSize);
+            try {
+                while (cursor.hasNext()) {
+                    consumer.accept((User) cursor.next());
+                }
+            }
+            finally {
+                cursor.close();
+            }
+            return;
+        }
+
+        final List<EntityManager> ems = new ArrayList<>();
+        final List<ScrollableCursor> cursors = new ArrayList<>();
+        try {
+            for (EntityManagerFactory emf : shards.entityManagerFactories()) {
+                final EntityManager em = emf.createEntityManager();
+                ems.add(em);
+                cursors.add(openCursor(em, pattern, fetchSize));
+            }
+            // A ScrollableCursor is a raw Iterator over the query result, here users
+            @SuppressWarnings("unchecked")
+            final List<Iterator<User>> users = (List<Iterator<User>>) (List<?>) cursors;
+            Iterators.mergeSorted(users, BY_USERNAME_AND_ID).forEachRemaining(consumer);
+        }
+        finally {
+            for (ScrollableCursor cursor : cursors) {
+                cursor.close();
+            }
+            for (EntityManager em : ems) {
+                em.close();
+            }
+        }
+    }
+
+    private static ScrollableCursor openCursor(final EntityManager em, final String pattern, final int fetchSize) {
+        return (ScrollableCursor) UserQueries.STREAM_BY_NAME.on(em)
+                .bind(UserQueries.USERNAME, pattern)
+                .hint(QueryHints.JDBC_FETCH_SIZE, fetchSize)
+                .singleResult();
+    }
 
-        return q.getResultList();
+    /**
+     * Merges lists sorted by the comparator, e.g. results from each shard, into one sorted list of at most
+     * {@code limit} elements. Assumes the database sorts strings as {@link String#compareTo(String)} does.
+     */
+    private static <T> List<T> merge(final List<List<T>> sorted, final Comparator<? super T> comparator, final int limit) {
+        if(sorted.size() == 1) {
+            return sorted.get(0);
+        }
+        return Lists.newArrayList(Iterables.limit(Iterables.mergeSorted(sorted, comparator), limit));
     }
 
     public EntityManager getEntityManager() {
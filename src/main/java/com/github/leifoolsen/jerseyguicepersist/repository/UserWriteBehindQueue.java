@@ -0,0 +1,346 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.config.RepositoryConfig;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.guice.PersistenceInitializer;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.inject.persist.UnitOfWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for creating users.
+ *
+ * {@link #submit(User)} validates the user, appends it to a memory-mapped {@link WriteBehindJournal} and
+ * queues it. A single writer thread drains the queue and group commits up to {@code batchSize} users at a
+ * time through {@link UserRepository#persistAll(Iterable, int)}; the journal is checkpointed after each
+ * batch. Users left in the journal when the application stopped, or crashed, are written by the writer thread
+ * before any new creates. Replaying a user that was already committed is harmless; it is reported as a CONFLICT.
+ *
+ * A batch that fails is retried every second. After {@code MAX_BATCH_ATTEMPTS} it is written one user at a
+ * time, and a user that still fails is reported as FAILED and checkpointed past, so that it can not hold up
+ * the users queued behind it.
+ *
+ * The outcome of each create is kept for {@code statusRetentionSeconds}, see {@link #status(String)}.
+ */
+@Singleton
+public class UserWriteBehindQueue {
+    private static final Logger logger = LoggerFactory.getLogger(UserWriteBehindQueue.class);
+
+    private static final String METRIC_PREFIX = "repository.writeBehind";
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+
+    private static final Gson GSON = new Gson();
+
+    private final UserRepository userRepository;
+    private final UnitOfWork unitOfWork;
+    private final RepositoryConfig.WriteBehindConfig config;
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private final Cache<String, PersistResult> statuses;
+    private final BlockingQueue<Entry> queue;
+    private final WriteBehindJournal journal;
+    private final Thread writer;
+    private volatile boolean running;
+
+    private final Meter accepted = Metrics.registry().meter(MetricRegistry.name(METRIC_PREFIX, "accepted"));
+    private final Meter rejected = Metrics.registry().meter(MetricRegistry.name(METRIC_PREFIX, "rejected"));
+    private final Meter failed = Metrics.registry().meter(MetricRegistry.name(METRIC_PREFIX, "failed"));
+    private final Histogram batchSizes = Metrics.registry().histogram(MetricRegistry.name(METRIC_PREFIX, "batchSize"));
+    private final Timer commits = Metrics.registry().timer(MetricRegistry.name(METRIC_PREFIX, "commit"));
+
+    /**
+     * @param persistence injected to make sure the persistence service is started before the writer thread starts
+     */
+    @Inject
+    public UserWriteBehindQueue(final UserRepository userRepository, final UnitOfWork unitOfWork,
+                                final RepositoryConfig config, final PersistenceInitializer persistence) {
+        this(userRepository, unitOfWork, config.writeBehindConfig(),
+                Paths.get(ApplicationConfigFactory.applicationConfig().workPath())
+                        .resolve(config.writeBehindConfig().journalFile()));
+    }
+
+    public UserWriteBehindQueue(final UserRepository userRepository, final UnitOfWork unitOfWork,
+                                final RepositoryConfig.WriteBehindConfig config, final Path journalFile) {
+        this.userRepository = userRepository;
+        this.unitOfWork = unitOfWork;
+        this.config = config;
+
+        statuses = CacheBuilder.newBuilder()
+                .expireAfterWrite(config.statusRetentionSeconds(), TimeUnit.SECONDS)
+                .build();
+
+        if(!config.enabled()) {
+            queue = null;
+            journal = null;
+            writer = null;
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(config.queueCapacity());
+        try {
+            journal = new WriteBehindJournal(journalFile, config.journalSizeMb() * 1024 * 1024, config.syncJournal());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not open write-behind journal: " + journalFile, e);
+        }
+        final List<Entry> replayed = replayed();
+
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "queueSize"), (Gauge<Integer>) queue::size);
+        Metrics.registerGauge(MetricRegistry.name(METRIC_PREFIX, "journalUsedBytes"), (Gauge<Integer>) this::journalUsedBytes);
+
+        running = true;
+        writer = new Thread(() -> drain(replayed), "user-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Write-behind queue started. Journal: {}", journalFile);
+    }
+
+    public boolean enabled() {
+        return config.enabled();
+    }
+
+    /**
+     * Validates and queues a user for creation.
+     *
+     * @return true if the user was queued, false if the queue or the journal is full
+     * @throws ConstraintViolationException if the user is not valid
+     * @throws IllegalStateException if the queue is not enabled, or has been stopped
+     */
+    public boolean submit(final User user) {
+        Preconditions.checkState(config.enabled(), "Write-behind queue is not enabled");
+        Preconditions.checkNotNull(user, "User may not be null");
+
+        final Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if(!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+
+        final byte[] data = GSON.toJson(user).getBytes(StandardCharsets.UTF_8);
+
+        // Journal order must be queue order, so that a checkpoint never passes an unwritten user
+        synchronized (journal) {
+            Preconditions.checkState(running, "Write-behind queue is stopped");
+            if(queue.remainingCapacity() == 0 || !journal.hasRoomFor(data.length)) {
+                rejected.mark();
+                return false;
+            }
+            final long position = journal.append(data);
+            statuses.put(user.getId(), new PersistResult(
+                    0, user.getId(), user.getUsername(), PersistResult.Status.QUEUED, null));
+            queue.add(new Entry(user, position));
+        }
+        accepted.mark();
+        return true;
+    }
+
+    /**
+     * @return the outcome of a queued create, or null if the id is unknown or the outcome has expired
+     */
+    public PersistResult status(final String id) {
+        return id != null ? statuses.getIfPresent(id) : null;
+    }
+
+    /**
+     * Stops accepting creates, writes what is queued and closes the journal.
+     */
+    public void stop() {
+        if(!config.enabled()) {
+            return;
+        }
+        synchronized (journal) {
+            if(!running) {
+                return;
+            }
+            running = false;
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (journal) {
+            try {
+                journal.close();
+            }
+            catch (IOException e) {
+                logger.warn("Failed to close write-behind journal", e);
+            }
+        }
+        logger.info("Write-behind queue stopped. {} users left in the journal", queue.size());
+    }
+
+    private void drain(final List<Entry> replayed) {
+        try {
+            if(!replayed.isEmpty()) {
+                logger.info("Replaying {} users from the write-behind journal", replayed.size());
+                for (List<Entry> batch : Lists.partition(replayed, config.batchSize())) {
+                    write(batch);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        final List<Entry> batch = new ArrayList<>(config.batchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                final Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null) {
+                    continue;
+                }
+                batch.add(first);
+                if(config.maxBatchDelay() > 0 && queue.size() < config.batchSize() - 1) {
+                    // Linger to let a burst build a larger group commit
+                    Thread.sleep(config.maxBatchDelay());
+                }
+                queue.drainTo(batch, config.batchSize() - batch.size());
+                write(batch);
+                batch.clear();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void write(final List<Entry> batch) throws InterruptedException {
+        final List<User> users = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            users.add(entry.user);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                final List<PersistResult> results = persist(users);
+                for (PersistResult result : results) {
+                    statuses.put(result.getId(), result);
+                }
+                checkpoint(batch.get(batch.size() - 1));
+                batchSizes.update(batch.size());
+                return;
+            }
+            catch (RuntimeException e) {
+                if(!running) {
+                    // Left in the journal, written when the queue is started again
+                    logger.warn("Could not write {} queued users. Will retry at startup", users.size(), e);
+                    return;
+                }
+                if(attempt == MAX_BATCH_ATTEMPTS) {
+                    logger.warn("Could not write {} queued users in {} attempts. Writing them one at a time",
+                            users.size(), attempt, e);
+                    writeEach(batch);
+                    return;
+                }
+                logger.warn("Could not write {} queued users. Retrying in {} ms", users.size(), RETRY_DELAY_MS, e);
+                Thread.sleep(RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private void writeEach(final List<Entry> batch) {
+        for (Entry entry : batch) {
+            PersistResult result;
+            try {
+                result = persist(Collections.singletonList(entry.user)).get(0);
+            }
+            catch (RuntimeException e) {
+                if(!running) {
+                    logger.warn("Could not write queued user '{}'. Will retry at startup", entry.user.getId(), e);
+                    return;
+                }
+                logger.error("Could not write queued user '{}'. Giving up", entry.user.getId(), e);
+                failed.mark();
+                result = new PersistResult(0, entry.user.getId(), entry.user.getUsername(),
+                        PersistResult.Status.FAILED, e.getMessage());
+            }
+            statuses.put(result.getId(), result);
+            checkpoint(entry);
+        }
+    }
+
+    private List<PersistResult> persist(final List<User> users) {
+        unitOfWork.begin();
+        try {
+            final Timer.Context commit = commits.time();
+            final List<PersistResult> results = userRepository.persistAll(users, config.batchSize());
+            commit.stop();
+            return results;
+        }
+        finally {
+            unitOfWork.end();
+        }
+    }
+
+    private void checkpoint(final Entry entry) {
+        synchronized (journal) {
+            journal.checkpoint(entry.position);
+        }
+    }
+
+    /**
+     * @return the users left in the journal, queued in front of new creates
+     */
+    private List<Entry> replayed() {
+        final List<byte[]> pending = journal.pending();
+        final List<Long> positions = journal.pendingPositions();
+        final List<Entry> entries = new ArrayList<>(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            final User user = GSON.fromJson(new String(pending.get(i), StandardCharsets.UTF_8), User.class);
+            statuses.put(user.getId(), new PersistResult(
+                    0, user.getId(), user.getUsername(), PersistResult.Status.QUEUED, null));
+            entries.add(new Entry(user, positions.get(i)));
+        }
+        return entries;
+    }
+
+    private int journalUsedBytes() {
+        synchronized (journal) {
+            return journal.usedBytes();
+        }
+    }
+
+    private static class Entry {
+        private final User user;
+        private final long position;
+
+        Entry(final User user, final long position) {
+            this.user = user;
+            this.position = position;
+        }
+    }
+}
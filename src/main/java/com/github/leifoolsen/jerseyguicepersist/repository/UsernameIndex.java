@@ -0,0 +1,176 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.leifoolsen.jerseyguicepersist.config.RepositoryConfig;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.guice.PersistenceInitializer;
+import com.github.leifoolsen.jerseyguicepersist.guice.ShardRouter;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.ResultSetConcurrency;
+import org.eclipse.persistence.config.ResultSetType;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.ScrollableCursor;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.UnitOfWork;
+import org.eclipse.persistence.sessions.changesets.ObjectChangeSet;
+import org.eclipse.persistence.sessions.changesets.UnitOfWorkChangeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Optional in-memory, sorted index of all usernames, answering prefix queries without touching the database.
+ *
+ * The index is loaded when created, and kept current by a session event listener that adds the
+ * usernames of newly inserted users after their transaction has committed; rolled back inserts never
+ * reach the index. Writes that bypass the persistence context, e.g. JPQL bulk updates, must call
+ * {@link #add(String)} and {@link #remove(String)} themselves.
+ */
+@Singleton
+public class UsernameIndex {
+    private static final Logger logger = LoggerFactory.getLogger(UsernameIndex.class);
+
+    private static final int LOAD_FETCH_SIZE = 1000;
+
+    private final NavigableSet<String> usernames = new ConcurrentSkipListSet<>();
+    private final boolean enabled;
+
+    /**
+     * @param persistence injected to make sure the persistence service is started before the index loads
+     */
+    @Inject
+    public UsernameIndex(final RepositoryConfig config, final PersistenceInitializer persistence,
+                         final ShardRouter shards) {
+        this(config.usernameIndexEnabled(), shards.entityManagerFactories());
+    }
+
+    public UsernameIndex(final boolean enabled, final EntityManagerFactory emf) {
+        this(enabled, Collections.singletonList(emf));
+    }
+
+    /**
+     * @param emfs the persistence units holding users, e.g. one per shard
+     */
+    public UsernameIndex(final boolean enabled, final List<EntityManagerFactory> emfs) {
+        this.enabled = enabled;
+        if(enabled) {
+            for (EntityManagerFactory emf : emfs) {
+                JpaHelper.getServerSession(emf).getEventManager().addListener(new CommitListener());
+                load(emf);
+            }
+            Metrics.registerGauge(MetricRegistry.name("repository.usernameIndex", "size"),
+                    (Gauge<Integer>) usernames::size);
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * @return up to {@code limit} usernames starting with the given prefix, in ascending order
+     */
+    public List<String> findByPrefix(final String prefix, final int limit) {
+        return findByPrefix(prefix, null, limit);
+    }
+
+    /**
+     * @param after the last username of the previous page, or null for the first page
+     * @return up to {@code limit} usernames starting with the given prefix and ordered after {@code after},
+     *         in ascending order
+     */
+    public List<String> findByPrefix(final String prefix, final String after, final int limit) {
+        Preconditions.checkState(enabled, "Username index is not enabled");
+        Preconditions.checkArgument(limit > 0, "limit must be greater than 0");
+
+        final NavigableSet<String> tail = after != null && after.compareTo(prefix) >= 0
+                ? usernames.tailSet(after, false)
+                : usernames.tailSet(prefix, true);
+
+        final List<String> result = new ArrayList<>(Math.min(limit, 100));
+        for (String username : tail) {
+            if(!username.startsWith(prefix) || result.size() >= limit) {
+                break;
+            }
+            result.add(username);
+        }
+        return result;
+    }
+
+    public void add(final String username) {
+        if(enabled && username != null) {
+            usernames.add(username);
+        }
+    }
+
+    public void remove(final String username) {
+        if(enabled && username != null) {
+            usernames.remove(username);
+        }
+    }
+
+    public int size() {
+        return usernames.size();
+    }
+
+    private void load(final EntityManagerFactory emf) {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final EntityManager em = emf.createEntityManager();
+        try {
+            final ScrollableCursor cursor = (ScrollableCursor) em
+                    .createQuery("select u.username from User u")
+                    .setHint(QueryHints.JDBC_FETCH_SIZE, LOAD_FETCH_SIZE)
+                    .setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE)
+                    .setHint(QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly)
+                    .setHint(QueryHints.RESULT_SET_CONCURRENCY, ResultSetConcurrency.ReadOnly)
+                    .getSingleResult();
+            try {
+                while (cursor.hasNext()) {
+                    add((String) cursor.next());
+                }
+            }
+            finally {
+                cursor.close();
+            }
+        }
+        finally {
+            em.close();
+        }
+        logger.info("Loaded {} usernames into index in {}", usernames.size(), stopwatch);
+    }
+
+    private class CommitListener extends SessionEventAdapter {
+        @Override
+        public void postCommitUnitOfWork(final SessionEvent event) {
+            final UnitOfWorkChangeSet changeSet = ((UnitOfWork) event.getSession()).getUnitOfWorkChangeSet();
+            if(changeSet == null) {
+                return;
+            }
+            for (Object o : changeSet.getAllChangeSets().keySet()) {
+                // Change sets of new objects carry no attribute change records, read the committed clone instead
+                final ObjectChangeSet ocs = (ObjectChangeSet) o;
+                if(ocs.isNew()) {
+                    final Object clone = changeSet.getUOWCloneForObjectChangeSet(ocs);
+                    if(clone instanceof User) {
+                        add(((User) clone).getUsername());
+                    }
+                }
+            }
+        }
+    }
+}
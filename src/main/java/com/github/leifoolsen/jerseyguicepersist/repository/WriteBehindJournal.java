@@ -0,0 +1,227 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal in a fixed size, memory-mapped file.
+ *
+ * Layout: a header holding the commit position, followed by records of
+ * {@code [int length][int crc32][length bytes]}. A zero length marks the end of the journal.
+ * Records before the commit position have been applied; records after it are pending and are
+ * returned by {@link #pending()} when the journal is reopened, e.g. after a crash.
+ *
+ * Writes to a mapped file survive a crash of the JVM. To survive a crash of the OS, open the journal
+ * with {@code sync = true}, which forces every append and checkpoint to disk.
+ *
+ * The journal is rewound to the start of the file when all records have been applied. Under steady load
+ * it rarely drains, so a checkpoint past the middle of the file also compacts it: the pending records are
+ * copied to the start of the file, into space already applied, before the commit position is moved there.
+ * Positions returned by {@link #append(byte[])} are logical and stay valid across a compaction.
+ * Not thread safe.
+ */
+class WriteBehindJournal implements Closeable {
+
+    private static final int MAGIC = 0x55574A31; // "UWJ1"
+    private static final int HEADER_SIZE = 16;
+    private static final int COMMIT_POSITION_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int END_MARKER_SIZE = 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean sync;
+    private final List<byte[]> pending = new ArrayList<>();
+    private final List<Long> pendingPositions = new ArrayList<>();
+
+    private int commitPosition;
+    private int writePosition;
+    // Bytes moved out of the file by rewinds and compactions; file position + compacted = logical position
+    private long compacted;
+
+    WriteBehindJournal(final Path file, final int size, final boolean sync) throws IOException {
+        Preconditions.checkArgument(size > HEADER_SIZE + RECORD_HEADER_SIZE + END_MARKER_SIZE, "Journal size too small");
+        this.sync = sync;
+
+        if(file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        final boolean existing = channel.size() >= HEADER_SIZE;
+        final int mappedSize = existing ? (int) Math.max(size, channel.size()) : size;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+
+        if(existing && buffer.getInt(0) == MAGIC) {
+            commitPosition = buffer.getInt(COMMIT_POSITION_OFFSET);
+            recover();
+        }
+        else {
+            buffer.putInt(0, MAGIC);
+            rewind();
+        }
+    }
+
+    /**
+     * @return records appended but not yet applied when the journal was opened, in append order
+     */
+    List<byte[]> pending() {
+        return pending;
+    }
+
+    /**
+     * @return the journal position after each of the {@link #pending()} records, to pass to {@link #checkpoint(long)}
+     */
+    List<Long> pendingPositions() {
+        return pendingPositions;
+    }
+
+    /**
+     * @return true if a record of the given length fits in the journal
+     */
+    boolean hasRoomFor(final int length) {
+        return writePosition + RECORD_HEADER_SIZE + length + END_MARKER_SIZE <= buffer.capacity();
+    }
+
+    /**
+     * @return the journal position after the record, to pass to {@link #checkpoint(long)} when the record is applied
+     * @throws IllegalStateException if there is no room for the record
+     */
+    long append(final byte[] data) {
+        Preconditions.checkState(hasRoomFor(data.length), "Journal is full");
+
+        final int position = writePosition;
+        final ByteBuffer b = buffer.duplicate();
+        b.position(position + RECORD_HEADER_SIZE);
+        b.put(data);
+        b.putInt(0); // End marker
+        buffer.putInt(position + 4, crc(data));
+        buffer.putInt(position, data.length);
+
+        writePosition = position + RECORD_HEADER_SIZE + data.length;
+        if(sync) {
+            buffer.force();
+        }
+        return compacted + writePosition;
+    }
+
+    /**
+     * Marks all records up to the given position as applied. Rewinds the journal if nothing is pending,
+     * and compacts it if more than half of the file has been applied.
+     */
+    void checkpoint(final long position) {
+        Preconditions.checkArgument(position >= compacted + commitPosition && position <= compacted + writePosition,
+                "Checkpoint position %s is outside the journal [%s, %s]",
+                position, compacted + commitPosition, compacted + writePosition);
+
+        if(position == compacted + writePosition) {
+            compacted += writePosition - HEADER_SIZE;
+            rewind();
+        }
+        else {
+            commitPosition = (int) (position - compacted);
+            buffer.putInt(COMMIT_POSITION_OFFSET, commitPosition);
+            if(commitPosition > buffer.capacity() / 2) {
+                compact();
+            }
+        }
+        if(sync) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Marks all records as applied
+     */
+    void checkpointAll() {
+        checkpoint(compacted + writePosition);
+    }
+
+    int usedBytes() {
+        return writePosition - HEADER_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Moves the pending records to the start of the file. Skipped if they would overlap their old place,
+     * since a crash during the copy must leave the records at the commit position intact.
+     */
+    private void compact() {
+        final int length = writePosition - commitPosition;
+        if(HEADER_SIZE + length + END_MARKER_SIZE > commitPosition) {
+            return;
+        }
+        final ByteBuffer from = buffer.duplicate();
+        from.position(commitPosition).limit(writePosition);
+        final ByteBuffer to = buffer.duplicate();
+        to.position(HEADER_SIZE);
+        to.put(from);
+        to.putInt(0); // End marker
+        if(sync) {
+            buffer.force();
+        }
+        buffer.putInt(COMMIT_POSITION_OFFSET, HEADER_SIZE);
+
+        compacted += commitPosition - HEADER_SIZE;
+        commitPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE + length;
+    }
+
+    private void rewind() {
+        commitPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE;
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.putInt(COMMIT_POSITION_OFFSET, commitPosition);
+    }
+
+    private void recover() {
+        if(commitPosition < HEADER_SIZE || commitPosition > buffer.capacity()) {
+            rewind();
+            return;
+        }
+        int position = commitPosition;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            final int length = buffer.getInt(position);
+            if(length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            final byte[] data = new byte[length];
+            final ByteBuffer b = buffer.duplicate();
+            b.position(position + RECORD_HEADER_SIZE);
+            b.get(data);
+            if(crc(data) != buffer.getInt(position + 4)) {
+                break; // Torn write
+            }
+            pending.add(data);
+            position += RECORD_HEADER_SIZE + length;
+            pendingPositions.add(compacted + position);
+        }
+        writePosition = position;
+        if(position + END_MARKER_SIZE <= buffer.capacity()) {
+            buffer.putInt(position, 0);
+        }
+    }
+
+    private static int crc(final byte[] data) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+}
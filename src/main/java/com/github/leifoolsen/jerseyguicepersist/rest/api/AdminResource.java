@@ -0,0 +1,64 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.api;
+
+import com.github.leifoolsen.jerseyguicepersist.guice.CacheStatistics;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import com.github.leifoolsen.jerseyguicepersist.rest.interceptor.Compress;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@Singleton
+@Path("admin")
+@Produces(MediaType.APPLICATION_JSON)
+public class AdminResource {
+
+    public static final String RESOURCE_PATH;
+
+    static {
+        RESOURCE_PATH = AdminResource.class.isAnnotationPresent(Path.class)
+                ? AdminResource.class.getAnnotation(Path.class).value() : "";
+    }
+
+    private static final Gson GSON = new GsonBuilder()
+            .serializeSpecialFloatingPointValues()
+            .setPrettyPrinting()
+            .create();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final CacheStatistics cacheStatistics;
+
+    @Inject
+    public AdminResource(CacheStatistics cacheStatistics) {
+        this.cacheStatistics = cacheStatistics;
+        logger.debug(this.getClass().getSimpleName() + " created");
+    }
+
+    /**
+     * @return all application metrics, keyed by metric name
+     */
+    @GET
+    @Path("metrics")
+    @Compress
+    public String metrics() {
+        return GSON.toJson(Metrics.snapshot());
+    }
+
+    /**
+     * @return the state of the EclipseLink shared (L2) cache, keyed by session name, then by entity name
+     */
+    @GET
+    @Path("cache")
+    @Compress
+    public String cache() {
+        return GSON.toJson(cacheStatistics.snapshot());
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.api;
+
+import javax.ws.rs.HttpMethod;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * HTTP PATCH, not part of JAX-RS 2.0
+ * See: https://tools.ietf.org/html/rfc5789
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@HttpMethod("PATCH")
+@Documented
+public @interface PATCH {
+}
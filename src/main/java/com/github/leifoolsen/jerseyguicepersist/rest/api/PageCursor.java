@@ -0,0 +1,69 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.api;
+
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserSummary;
+import com.github.leifoolsen.jerseyguicepersist.util.StringUtil;
+import com.google.common.base.Preconditions;
+import com.google.common.io.BaseEncoding;
+
+import javax.ws.rs.BadRequestException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Opaque keyset pagination cursor, built from the (username, id) key of the last user on a page.
+ * The token is URL safe Base64 and should be treated as opaque by clients.
+ */
+public final class PageCursor {
+
+    private static final char SEPARATOR = '\u0000';
+    private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+    private final String username;
+    private final String id;
+
+    private PageCursor(final String username, final String id) {
+        this.username = username;
+        this.id = id;
+    }
+
+    public static PageCursor of(final User user) {
+        Preconditions.checkNotNull(user, "User may not be null");
+        return new PageCursor(user.getUsername(), user.getId());
+    }
+
+    public static PageCursor of(final UserSummary user) {
+        Preconditions.checkNotNull(user, "User may not be null");
+        return new PageCursor(user.getUsername(), user.getId());
+    }
+
+    /**
+     * @param token a token previously created by {@link #encode()}
+     * @return the decoded cursor, or null if token is blank
+     * @throws BadRequestException if the token is malformed
+     */
+    public static PageCursor decode(final String token) {
+        if(StringUtil.blankToNull(token) == null) {
+            return null;
+        }
+        final String s;
+        try {
+            s = new String(ENCODING.decode(token.trim()), StandardCharsets.UTF_8);
+        }
+        catch (IllegalArgumentException e) {
+            throw new BadRequestException("Malformed page cursor: '" + token + "'", e);
+        }
+        final int i = s.indexOf(SEPARATOR);
+        if(i < 1) {
+            throw new BadRequestException("Malformed page cursor: '" + token + "'");
+        }
+        return new PageCursor(s.substring(0, i), s.substring(i + 1));
+    }
+
+    public String encode() {
+        return ENCODING.encode((username + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String username() { return username; }
+
+    public String id() { return id; }
+}
@@ -0,0 +1,121 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.api;
+
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.repository.InvalidItemException;
+import com.github.leifoolsen.jerseyguicepersist.util.GsonTypeAdapters;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import javax.ws.rs.BadRequestException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Parses users lazily from a request body, either a JSON array or newline delimited JSON (NDJSON).
+ * The body is read as the iterator advances, so a bulk request is never held in memory as a whole.
+ * The iterable can only be iterated once.
+ *
+ * An item that is not a user, e.g. {@code null} or a field of the wrong type, makes {@link Iterator#next()} throw
+ * {@link InvalidItemException}, and the iteration goes on with the next item. Malformed JSON ends the iteration:
+ * the rest of the body can not be read, so the item is reported as invalid and no more items follow.
+ */
+class UserJsonIterable implements Iterable<User> {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(String.class, GsonTypeAdapters.stringDeserializerEmptyToNull())
+            .create();
+
+    private final JsonReader reader;
+    private final boolean ndjson;
+    private boolean iterated = false;
+    private boolean malformed = false;
+
+    UserJsonIterable(final InputStream inputStream, final boolean ndjson) {
+        this.reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        this.ndjson = ndjson;
+
+        // Lenient mode accepts multiple top level values, i.e. one JSON object per line
+        this.reader.setLenient(ndjson);
+    }
+
+    @Override
+    public Iterator<User> iterator() {
+        if(iterated) {
+            throw new IllegalStateException("Request body can only be iterated once");
+        }
+        iterated = true;
+
+        try {
+            if(!ndjson) {
+                reader.beginArray();
+            }
+        }
+        catch (IOException | IllegalStateException e) {
+            throw new BadRequestException("Expected a JSON array of users", e);
+        }
+
+        return new Iterator<User>() {
+            private boolean done = false;
+
+            @Override
+            public boolean hasNext() {
+                if(done) {
+                    return false;
+                }
+                if(malformed) {
+                    return true;
+                }
+                try {
+                    return ndjson
+                            ? reader.peek() != JsonToken.END_DOCUMENT
+                            : reader.hasNext();
+                }
+                catch (IOException e) {
+                    // Reported by next()
+                    malformed = true;
+                    return true;
+                }
+            }
+
+            @Override
+            public User next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if(malformed) {
+                    done = true;
+                    throw new InvalidItemException("Malformed JSON in request body");
+                }
+
+                // Read the whole item first, so that an item of the wrong shape leaves the reader at the next item
+                final JsonElement item;
+                try {
+                    item = GSON.fromJson(reader, JsonElement.class);
+                }
+                catch (JsonParseException e) {
+                    done = true;
+                    throw new InvalidItemException("Malformed JSON in request body", e);
+                }
+                final User user;
+                try {
+                    user = GSON.fromJson(item, User.class);
+                }
+                catch (JsonParseException e) {
+                    throw new InvalidItemException("Not a user: " + e.getMessage(), e);
+                }
+                if(user == null) {
+                    throw new InvalidItemException("Not a user: null");
+                }
+                return user;
+            }
+        };
+    }
+}
@@ -1,27 +1,66 @@
 package com.github.leifoolsen.jerseyguicepersist.rest.api;
 
 import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserPatch;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserSummary;
+import com.github.leifoolsen.jerseyguicepersist.repository.DatabaseExecutor;
+import com.github.leifoolsen.jerseyguicepersist.repository.LookupResult;
+import com.github.leifoolsen.jerseyguicepersist.repository.PersistResult;
 import com.github.leifoolsen.jerseyguicepersist.repository.UserRepository;
+import com.github.leifoolsen.jerseyguicepersist.repository.UserWriteBehindQueue;
+import com.github.leifoolsen.jerseyguicepersist.rest.filter.RateLimited;
 import com.github.leifoolsen.jerseyguicepersist.rest.interceptor.Compress;
 import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.persist.UnitOfWork;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 @Singleton
 @Path("users")
@@ -35,46 +74,467 @@ public class UserResource {
                 ? UserResource.class.getAnnotation(Path.class).value() : "";
     }
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    // See: https://tools.ietf.org/html/rfc7240
+    public static final String PREFER = "Prefer";
+    public static final String PREFERENCE_APPLIED = "Preference-Applied";
+    public static final String RESPOND_ASYNC = "respond-async";
+
+    // Not in javax.ws.rs.core.Response.Status, see: https://tools.ietf.org/html/rfc6585#section-4
+    static final int TOO_MANY_REQUESTS = 429;
+
+    // See: https://tools.ietf.org/html/rfc6585#section-3
+    static final int PRECONDITION_REQUIRED = 428;
+
+    static final String DEFAULT_PAGE_SIZE = "100";
+    static final long MAX_PAGE_SIZE = 1000;
+    // Ids per multi-get. Uncached ids are read in IN-lists of repositoryConfig.inListChunkSize ids, on every shard
+    static final int MAX_LOOKUP_IDS = 500;
+    static final int EXPORT_FETCH_SIZE = 500;
+    static final int EXPORT_FLUSH_ROWS = 1000;
+
+    private static final Gson GSON = new Gson();
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private UriInfo uriInfo;
     private UserRepository userRepository;
+    private UserWriteBehindQueue writeBehindQueue;
+    private UnitOfWork unitOfWork;
+    private DatabaseExecutor databaseExecutor;
 
     @Inject // @Inject injects UserRepository from Guice container. @Context injects from REST container
-    public UserResource(UserRepository userRepository, @Context UriInfo uriInfo) {
+    public UserResource(UserRepository userRepository, UserWriteBehindQueue writeBehindQueue,
+                        UnitOfWork unitOfWork, DatabaseExecutor databaseExecutor, @Context UriInfo uriInfo) {
         this.userRepository = userRepository;
+        this.writeBehindQueue = writeBehindQueue;
+        this.unitOfWork = unitOfWork;
+        this.databaseExecutor = databaseExecutor;
         this.uriInfo = uriInfo;
         logger.debug(this.getClass().getSimpleName() + " created");
     }
 
+    /**
+     * Creates a user. With the header {@code Prefer: respond-async}, and the write-behind queue enabled,
+     * the user is validated and queued, and the response is {@code 202 Accepted} with the status URI in
+     * the Location header. If the queue is full the response is {@code 429 Too Many Requests}.
+     * Without the header, or with the queue disabled, the user is persisted before the response.
+     */
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
-    public void create(final User user) {
-        userRepository.persist(user);
+    @RateLimited("create")
+    public void create(@HeaderParam(PREFER) final String prefer, final User user,
+                       @Suspended final AsyncResponse response) {
+        if(writeBehindQueue.enabled() && prefer != null && prefer.contains(RESPOND_ASYNC)) {
+            if(!writeBehindQueue.submit(user)) {
+                response.resume(Response
+                        .status(TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, 1)
+                        .location(uriInfo.getRequestUri())
+                        .build());
+                return;
+            }
+            response.resume(Response
+                    .accepted()
+                    .header(PREFERENCE_APPLIED, RESPOND_ASYNC)
+                    .location(uriInfo.getBaseUriBuilder().path(RESOURCE_PATH).path("queue").path(user.getId()).build())
+                    .build());
+            return;
+        }
+        async(response, () -> {
+            userRepository.persist(user);
+            return Response.noContent().build();
+        });
+    }
+
+    /**
+     * Status of a create queued with {@code Prefer: respond-async}: QUEUED, CREATED, CONFLICT or INVALID.
+     */
+    @GET
+    @Path("queue/{id}")
+    public PersistResult queuedCreate(@PathParam("id") final String id) {
+        final PersistResult result = writeBehindQueue.status(id);
+        if(result == null) {
+            throw new NotFoundException("No queued create found for id: '" + id + "'");
+        }
+        return result;
+    }
+
+    /**
+     * Bulk create. Accepts a JSON array or an NDJSON stream of users, and persists them in chunked
+     * commits. The response reports the result of each item: CREATED, CONFLICT or INVALID.
+     */
+    @POST
+    @Path("batch")
+    @Consumes({MediaType.APPLICATION_JSON, APPLICATION_NDJSON})
+    @Compress
+    @RateLimited("create")
+    public Response createBatch(@Context final HttpHeaders headers, final InputStream body) {
+        final boolean ndjson = headers.getMediaType() != null
+                && headers.getMediaType().isCompatible(MediaType.valueOf(APPLICATION_NDJSON));
+
+        final List<PersistResult> results = userRepository.persistAll(new UserJsonIterable(body, ndjson));
+
+        GenericEntity<List<PersistResult>> entities = new GenericEntity<List<PersistResult>>(results){};
+        return Response
+                .ok(entities)
+                .location(uriInfo.getRequestUri())
+                .build();
     }
 
+    /**
+     * Pages through users ordered by username. With one or more {@code id} query parameters,
+     * e.g. {@code ?id=a&id=b}, it is a multi-get of at most {@value #MAX_LOOKUP_IDS} ids instead,
+     * see {@link #lookup(String, AsyncResponse)}, and is charged to the "lookup" rate limit.
+     */
     @GET
     @Compress
-    public Response allUsers(@QueryParam("user") final String user) {
+    @RateLimited(value = "list", param = "id", paramLimit = "lookup")
+    public void allUsers(@QueryParam("user") final String user,
+                         @QueryParam("after") final String after,
+                         @QueryParam("limit") @DefaultValue(DEFAULT_PAGE_SIZE) @Min(1) @Max(MAX_PAGE_SIZE) final int limit,
+                         @QueryParam("id") final List<String> ids,
+                         @Suspended final AsyncResponse response) {
+
+        if(!ids.isEmpty()) {
+            lookup(ids, response);
+            return;
+        }
+
+        page(user, after, limit, response, userRepository::findPageByName, PageCursor::of,
+                new GenericType<List<User>>() {});
+    }
+
+    /**
+     * Multi-get, for id lists too long for a query string. The body is a JSON array of ids.
+     * The response has one result per id, in request order; ids with no user are reported with
+     * {@code found: false}. At most {@value #MAX_LOOKUP_IDS} ids per request; more is a {@code 400 Bad Request}.
+     */
+    @POST
+    @Path("lookup")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Compress
+    @RateLimited("lookup")
+    public void lookup(final String body, @Suspended final AsyncResponse response) {
+        final List<String> ids;
+        try {
+            ids = GSON.fromJson(body, new TypeToken<List<String>>() {}.getType());
+        }
+        catch (JsonParseException e) {
+            throw new BadRequestException("Expected a JSON array of ids", e);
+        }
+        if(ids == null) {
+            throw new BadRequestException("Expected a JSON array of ids");
+        }
+        lookup(ids, response);
+    }
 
-        List<User> users = userRepository.findByName(MoreObjects.firstNonNull(user, "") + "%");
-        if(users.size()< 1) {
+    private void lookup(final List<String> ids, final AsyncResponse response) {
+        if(ids.size() > MAX_LOOKUP_IDS) {
+            throw new BadRequestException("At most " + MAX_LOOKUP_IDS + " ids per lookup");
+        }
+        final URI requestUri = uriInfo.getRequestUri();
+        async(response, () -> {
+            GenericEntity<List<LookupResult>> entities = new GenericEntity<List<LookupResult>>(userRepository.findByIds(ids)){};
             return Response
-                    .noContent()
-                    .location(uriInfo.getRequestUri())
+                    .ok(entities)
+                    .location(requestUri)
                     .build();
-        }
+        });
+    }
+
+    /**
+     * Lightweight variant of the user list: id, username and active only, paged the same way.
+     * Served from a projection query, so no entities are loaded into a persistence context.
+     */
+    @GET
+    @Path("summary")
+    @Compress
+    @RateLimited("list")
+    public void userSummaries(@QueryParam("user") final String user,
+                              @QueryParam("after") final String after,
+                              @QueryParam("limit") @DefaultValue(DEFAULT_PAGE_SIZE) @Min(1) @Max(MAX_PAGE_SIZE) final int limit,
+                              @Suspended final AsyncResponse response) {
+
+        page(user, after, limit, response, userRepository::findSummaryPageByName, PageCursor::of,
+                new GenericType<List<UserSummary>>() {});
+    }
+
+    /**
+     * Keyset pagination by username. Reads one extra row to find out if there is a next page, and links to it.
+     *
+     * @param fetch reads a page, see {@link UserRepository#findPageByName(String, String, String, int)}
+     * @param cursorOf the cursor positioned at an item, for the next link
+     * @param type the type of the response entity
+     */
+    private <T> void page(final String user, final String after, final int limit, final AsyncResponse response,
+                          final PageQuery<T> fetch, final Function<T, PageCursor> cursorOf,
+                          final GenericType<List<T>> type) {
+
+        final PageCursor cursor = PageCursor.decode(after);
+        final UriBuilder requestUri = uriInfo.getRequestUriBuilder();
+        async(response, () -> {
+            List<T> items = fetch.find(
+                    MoreObjects.firstNonNull(user, "") + "%",
+                    cursor != null ? cursor.username() : null,
+                    cursor != null ? cursor.id() : null,
+                    limit + 1);
+
+            if(items.size()< 1) {
+                return Response
+                        .noContent()
+                        .location(requestUri.build())
+                        .build();
+            }
+
+            final Link next;
+            if(items.size() > limit) {
+                items = items.subList(0, limit);
+                next = nextLink(requestUri, cursorOf.apply(items.get(limit - 1)), limit);
+            }
+            else {
+                next = null;
+            }
+
+            GenericEntity<List<T>> entities = new GenericEntity<>(items, type.getType());
+            Response.ResponseBuilder rb = Response
+                    .ok(entities)
+                    .location(requestUri.build());
+
+            return next != null
+                    ? rb.links(next).build()
+                    : rb.build();
+        });
+    }
+
+    @FunctionalInterface
+    private interface PageQuery<T> {
+        List<T> find(String username, String afterUsername, String afterId, int limit);
+    }
+
+    /**
+     * Type-ahead: usernames starting with the given prefix, in ascending order, as a JSON array of strings.
+     * MOXy does not marshal a bare list of strings, so the array is written with Gson.
+     * Without the username index the prefix is a database query, so it runs on the {@link DatabaseExecutor}.
+     */
+    @GET
+    @Path("usernames")
+    @RateLimited("list")
+    public void usernames(@QueryParam("prefix") final String prefix,
+                          @QueryParam("limit") @DefaultValue("10") @Min(1) @Max(MAX_PAGE_SIZE) final int limit,
+                          @Suspended final AsyncResponse response) {
 
-        GenericEntity<List<User>> entities = new GenericEntity<List<User>>(users){};
+        final URI requestUri = uriInfo.getRequestUri();
+        async(response, () -> {
+            List<String> usernames = userRepository.findUsernamesByPrefix(prefix, limit);
+            return Response
+                    .ok(GSON.toJson(usernames))
+                    .location(requestUri)
+                    .build();
+        });
+    }
+
+    /**
+     * Streams all users matching the given name as a JSON array. Users are written to the socket as
+     * they are read from the database.
+     */
+    @GET
+    @Path("export")
+    @Compress
+    @RateLimited("list")
+    public Response exportJson(@QueryParam("user") final String user) {
+        return export(user, false);
+    }
+
+    /**
+     * Streams all users matching the given name as newline delimited JSON, one user per line.
+     */
+    @GET
+    @Path("export")
+    @Compress
+    @Produces(APPLICATION_NDJSON)
+    @RateLimited("list")
+    public Response exportNdjson(@QueryParam("user") final String user) {
+        return export(user, true);
+    }
+
+    private Response export(final String user, final boolean ndjson) {
         return Response
-                .ok(entities)
+                .ok(new UserStreamingOutput(unitOfWork, userRepository, MoreObjects.firstNonNull(user, "") + "%",
+                        ndjson, EXPORT_FETCH_SIZE, EXPORT_FLUSH_ROWS))
                 .location(uriInfo.getRequestUri())
                 .build();
     }
 
+    /**
+     * Single user, with a strong ETag derived from id and {@code @Version}. A request with a matching
+     * {@code If-None-Match} gets {@code 304 Not Modified}; that check is a version-only lookup, so the
+     * user is neither loaded nor serialized. Without {@code If-None-Match} the user is loaded directly.
+     */
     @GET
     @Path("{id}")
-    public User findById(@PathParam("id") final String id) {
-        return userRepository.findById(id);
+    @RateLimited("lookup")
+    public void findById(@PathParam("id") final String id,
+                         @HeaderParam(HttpHeaders.IF_NONE_MATCH) final String ifNoneMatch,
+                         @Context final Request request,
+                         @Suspended final AsyncResponse response) {
+        async(response, () -> {
+            final Long version = ifNoneMatch != null ? userRepository.findVersionById(id) : null;
+            if(version != null) {
+                final Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag(id, version));
+                if(notModified != null) {
+                    return notModified.build();
+                }
+            }
+
+            final User user = userRepository.findById(id);
+            if(user == null) {
+                return Response.noContent().build();
+            }
+            return Response
+                    .ok(user)
+                    .tag(entityTag(user.getId(), user.getVersion()))
+                    .build();
+        });
+    }
+
+    /**
+     * Replaces username, password and active. Requires {@code If-Match} with the user's current ETag,
+     * see {@link #update(String, String, UserPatch)}.
+     */
+    @PUT
+    @Path("{id}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @RateLimited("create")
+    public void replace(@PathParam("id") final String id,
+                        @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch, final User user,
+                        @Suspended final AsyncResponse response) {
+        async(response, () -> {
+            final long version = expectedVersion(id, ifMatch);
+            return updated(id, userRepository.replace(id, version, user));
+        });
+    }
+
+    /**
+     * Partial update of active and/or password, run as a single version checked update statement.
+     * Requires {@code If-Match} with the user's current ETag, or {@code *}. Without it the response is
+     * {@code 428 Precondition Required}; if the user has been changed since, {@code 412 Precondition Failed}.
+     * On success the response is {@code 204 No Content} with the new ETag.
+     */
+    @PATCH
+    @Path("{id}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @RateLimited("create")
+    public void update(@PathParam("id") final String id,
+                       @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch, final UserPatch patch,
+                       @Suspended final AsyncResponse response) {
+        async(response, () -> {
+            final long version = expectedVersion(id, ifMatch);
+            return updated(id, userRepository.update(id, version, patch));
+        });
+    }
+
+    private long expectedVersion(final String id, final String ifMatch) {
+        if(ifMatch == null) {
+            throw new WebApplicationException("Header '" + HttpHeaders.IF_MATCH + "' is required", PRECONDITION_REQUIRED);
+        }
+        if("*".equals(ifMatch.trim())) {
+            final Long version = userRepository.findVersionById(id);
+            if(version == null) {
+                throw new NotFoundException("No user found for id: '" + id + "'");
+            }
+            return version;
+        }
+
+        // Strong comparison; a weak tag, or a tag for another user, never matches
+        final String prefix = id + ":";
+        try {
+            final EntityTag tag = EntityTag.valueOf(ifMatch.trim());
+            if(!tag.isWeak() && tag.getValue().startsWith(prefix)) {
+                return Long.parseLong(tag.getValue().substring(prefix.length()));
+            }
+        }
+        catch (IllegalArgumentException ignored) {
+            // Malformed tag or version, does not match
+        }
+        throw new WebApplicationException("ETag does not match user: '" + id + "'", Response.Status.PRECONDITION_FAILED);
+    }
+
+    private Response updated(final String id, final Long version) {
+        if(version == null) {
+            if(userRepository.findVersionById(id) == null) {
+                throw new NotFoundException("No user found for id: '" + id + "'");
+            }
+            throw new WebApplicationException("User has been modified: '" + id + "'", Response.Status.PRECONDITION_FAILED);
+        }
+        return Response
+                .noContent()
+                .tag(entityTag(id, version))
+                .build();
+    }
+
+    static EntityTag entityTag(final String id, final Long version) {
+        return new EntityTag(id + ":" + version);
+    }
+
+    /**
+     * Runs the database work of a request on the {@link DatabaseExecutor}, and resumes the response with
+     * the result. The request thread is released meanwhile. If the executor's queue is full, or the work has
+     * not completed within the executor's timeout, the response is {@code 503 Service Unavailable}.
+     * Request scoped context, e.g. {@link UriInfo}, is not available to the work; read it before.
+     */
+    private void async(final AsyncResponse response, final Callable<Response> work) {
+        final AtomicReference<Future<?>> task = new AtomicReference<>();
+        response.setTimeoutHandler(r -> {
+            final Future<?> f = task.get();
+            if(f != null && f.cancel(false)) {
+                // Never ran, so the client may safely retry
+                r.resume(serviceUnavailable());
+            }
+            else if(r.isSuspended()) {
+                // Running, and a write may commit. Answer with its outcome rather than a retry hint
+                r.setTimeout(databaseExecutor.timeout(), TimeUnit.MILLISECONDS);
+            }
+        });
+        response.setTimeout(databaseExecutor.timeout(), TimeUnit.MILLISECONDS);
+
+        final ListenableFuture<Response> future;
+        try {
+            future = databaseExecutor.submit(work);
+        }
+        catch (RejectedExecutionException e) {
+            response.resume(serviceUnavailable());
+            return;
+        }
+        task.set(future);
+        Futures.addCallback(future, new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(final Response result) {
+                response.resume(result);
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                if(!(t instanceof CancellationException)) {
+                    response.resume(t);
+                }
+            }
+        });
+    }
+
+    private static Response serviceUnavailable() {
+        return Response
+                .status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, 1)
+                .build();
+    }
+
+    private static Link nextLink(final UriBuilder requestUri, final PageCursor last, final int limit) {
+        return Link.fromUriBuilder(requestUri.clone()
+                .replaceQueryParam("after", last.encode())
+                .replaceQueryParam("limit", limit))
+                .rel("next")
+                .build();
     }
 }
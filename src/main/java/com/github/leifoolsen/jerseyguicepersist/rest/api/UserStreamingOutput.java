@@ -0,0 +1,95 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.api;
+
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.repository.UserRepository;
+import com.github.leifoolsen.jerseyguicepersist.util.SneakyThrow;
+import com.google.gson.Gson;
+import com.google.inject.persist.UnitOfWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes users to the response as they are read from the database, either as a JSON array or
+ * as newline delimited JSON (NDJSON). The output is flushed every {@code flushRows} rows.
+ *
+ * The entity is written after the {@code UnitOfWorkFilter} has ended the request's unit of work,
+ * so the output runs its own unit of work.
+ */
+class UserStreamingOutput implements StreamingOutput {
+    private static final Logger logger = LoggerFactory.getLogger(UserStreamingOutput.class);
+
+    private static final Gson GSON = new Gson();
+
+    private final UnitOfWork unitOfWork;
+    private final UserRepository userRepository;
+    private final String username;
+    private final boolean ndjson;
+    private final int fetchSize;
+    private final int flushRows;
+
+    UserStreamingOutput(final UnitOfWork unitOfWork, final UserRepository userRepository, final String username,
+                        final boolean ndjson, final int fetchSize, final int flushRows) {
+        this.unitOfWork = unitOfWork;
+        this.userRepository = userRepository;
+        this.username = username;
+        this.ndjson = ndjson;
+        this.fetchSize = fetchSize;
+        this.flushRows = flushRows;
+    }
+
+    @Override
+    public void write(final OutputStream outputStream) throws IOException, WebApplicationException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        final int[] rows = {0};
+
+        if(!ndjson) {
+            writer.write('[');
+        }
+
+        unitOfWork.begin();
+        try {
+            userRepository.forEachByName(username, fetchSize, user -> {
+                try {
+                    writeUser(writer, user, rows[0]++);
+                    if (rows[0] % flushRows == 0) {
+                        writer.flush();
+                    }
+                }
+                catch (IOException e) {
+                    SneakyThrow.exception(e);
+                }
+            });
+        }
+        finally {
+            unitOfWork.end();
+        }
+
+        if(!ndjson) {
+            writer.write(']');
+        }
+        writer.flush();
+        logger.debug("Streamed {} users", rows[0]);
+    }
+
+    private void writeUser(final Writer writer, final User user, final int row) throws IOException {
+        if(ndjson) {
+            GSON.toJson(user, User.class, writer);
+            writer.write('\n');
+        }
+        else {
+            if(row > 0) {
+                writer.write(',');
+            }
+            GSON.toJson(user, User.class, writer);
+        }
+    }
+}
@@ -2,10 +2,12 @@ package com.github.leifoolsen.jerseyguicepersist.rest.application;
 
 import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
 import com.github.leifoolsen.jerseyguicepersist.guice.GuiceModule;
+import com.github.leifoolsen.jerseyguicepersist.guice.PersistenceInitializer;
 import com.github.leifoolsen.jerseyguicepersist.guice.PersistenceModule;
+import com.github.leifoolsen.jerseyguicepersist.repository.DatabaseExecutor;
+import com.github.leifoolsen.jerseyguicepersist.repository.UserWriteBehindQueue;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
-import com.google.inject.persist.PersistService;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.jersey.filter.LoggingFilter;
 import org.glassfish.jersey.server.ResourceConfig;
@@ -93,7 +95,13 @@ public class ApplicationModel extends ResourceConfig {
         private final Logger logger = LoggerFactory.getLogger(getClass());
 
         @Inject
-        PersistService service;
+        DatabaseExecutor databaseExecutor;
+
+        @Inject
+        UserWriteBehindQueue writeBehindQueue;
+
+        @Inject
+        PersistenceInitializer persistence;
 
         @Override
         public void onStartup(Container container) {
@@ -104,8 +112,11 @@ public class ApplicationModel extends ResourceConfig {
         public void onShutdown(Container container) {
             logger.info(">>> Application shutdown");
 
-            // Stop persistence service
-            service.stop();
+            // Complete database work of suspended requests, write queued users,
+            // then stop persistence service and connection pool
+            databaseExecutor.stop();
+            writeBehindQueue.stop();
+            persistence.stop();
         }
     }
 }
@@ -0,0 +1,88 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.filter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.leifoolsen.jerseyguicepersist.config.AdmissionControlConfig;
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Admission control: an adaptive limit on requests in flight per resource method, see {@link AimdLimit}.
+ * A request over the limit of its resource method is rejected before any work is done, with
+ * {@code rejectStatus} and {@code Retry-After}, rather than queued until clients time out.
+ *
+ * Runs after {@link RateLimitFilter}, so a client over its rate limit does not take a slot, and before the
+ * other request filters, so a rejected request does not begin a unit of work.
+ * The metrics "admission.&lt;Resource.method&gt;.limit", ".inFlight" and ".rejected" are created on first use.
+ */
+@Provider
+@Priority(Priorities.AUTHORIZATION)
+public class AdmissionControlFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String METRIC_PREFIX = "admission";
+    private static final String LIMIT_PROPERTY = AdmissionControlFilter.class.getName() + ".limit";
+    private static final String START_PROPERTY = AdmissionControlFilter.class.getName() + ".start";
+
+    private final AdmissionControlConfig config = ApplicationConfigFactory.applicationConfig().admissionControlConfig();
+    private final Map<Method, Admission> admissions = new ConcurrentHashMap<>();
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        final Method method = resourceInfo.getResourceMethod();
+        if(!config.enabled() || method == null) {
+            return;
+        }
+        final Admission admission = admissions.computeIfAbsent(method, m -> new Admission(resourceInfo.getResourceClass(), m));
+        if(!admission.limit.tryAcquire()) {
+            admission.rejected.mark();
+            request.abortWith(Response
+                    .status(config.rejectStatus())
+                    .header(HttpHeaders.RETRY_AFTER, config.retryAfter())
+                    .build());
+            return;
+        }
+        request.setProperty(LIMIT_PROPERTY, admission.limit);
+        request.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        final AimdLimit limit = (AimdLimit) request.getProperty(LIMIT_PROPERTY);
+        if(limit != null) {
+            request.removeProperty(LIMIT_PROPERTY);
+            limit.release(System.nanoTime() - (Long) request.getProperty(START_PROPERTY),
+                    response.getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        }
+    }
+
+    private class Admission {
+        final AimdLimit limit = new AimdLimit(config);
+        final Meter rejected;
+
+        Admission(final Class<?> resourceClass, final Method method) {
+            final String name = MetricRegistry.name(METRIC_PREFIX, resourceClass.getSimpleName() + "." + method.getName());
+            rejected = Metrics.registry().meter(MetricRegistry.name(name, "rejected"));
+            Metrics.registerGauge(MetricRegistry.name(name, "limit"), (Gauge<Integer>) limit::limit);
+            Metrics.registerGauge(MetricRegistry.name(name, "inFlight"), (Gauge<Integer>) limit::inFlight);
+        }
+    }
+}
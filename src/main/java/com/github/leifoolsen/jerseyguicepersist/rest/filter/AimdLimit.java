@@ -0,0 +1,67 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.filter;
+
+import com.github.leifoolsen.jerseyguicepersist.config.AdmissionControlConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Additive increase, multiplicative decrease limit on requests in flight.
+ *
+ * A fast response, completed while at least half of the limit was in use, increases the limit by one.
+ * A response slower than the latency threshold, or one reporting overload, multiplies the limit by the
+ * backoff ratio. The limit stays between the configured min and max.
+ */
+class AimdLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThreshold;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    AimdLimit(final AdmissionControlConfig config) {
+        minLimit = config.minLimit();
+        maxLimit = config.maxLimit();
+        latencyThreshold = TimeUnit.MILLISECONDS.toNanos(config.latencyThreshold());
+        backoffRatio = config.backoffRatio();
+        limit = config.initialLimit();
+    }
+
+    int limit() { return limit; }
+
+    int inFlight() { return inFlight.get(); }
+
+    /**
+     * @return true if the request may proceed. Must be followed by {@link #release(long, boolean)}
+     */
+    boolean tryAcquire() {
+        for (;;) {
+            final int n = inFlight.get();
+            if(n >= limit) {
+                return false;
+            }
+            if(inFlight.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param latency nanoseconds from {@link #tryAcquire()} to the response
+     * @param overloaded true if the response reports overload, e.g. 503
+     */
+    void release(final long latency, final boolean overloaded) {
+        final int n = inFlight.getAndDecrement();
+        synchronized (this) {
+            if(overloaded || latency > latencyThreshold) {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+            }
+            else if(n * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.filter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.config.RateLimitConfig;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import com.github.leifoolsen.jerseyguicepersist.util.StringUtil;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per client rate limits, bound to resource methods annotated with {@link RateLimited}.
+ *
+ * Each client has a {@link TokenBucket} per limit. Clients are identified by {@code rateLimitConfig.clientHeader},
+ * if configured and present in the request, else by remote address. Buckets are held in a bounded cache per limit,
+ * evicting the least recently seen clients. A request without a token is rejected with
+ * {@code 429 Too Many Requests} and {@code Retry-After}.
+ *
+ * Responses carry {@code X-RateLimit-Limit} (burst size), {@code X-RateLimit-Remaining} (tokens left) and
+ * {@code X-RateLimit-Reset} (seconds until the bucket is full).
+ * The metrics "rateLimit.&lt;limit&gt;.clients" and ".rejected" are published per limit.
+ */
+@Provider
+@RateLimited
+@Priority(Priorities.AUTHENTICATION)
+public class RateLimitFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    public static final String X_RATE_LIMIT_LIMIT = "X-RateLimit-Limit";
+    public static final String X_RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+    public static final String X_RATE_LIMIT_RESET = "X-RateLimit-Reset";
+
+    static final int TOO_MANY_REQUESTS = 429;
+
+    private static final String METRIC_PREFIX = "rateLimit";
+    private static final String BUCKET_PROPERTY = RateLimitFilter.class.getName() + ".bucket";
+    private static final String NOW_PROPERTY = RateLimitFilter.class.getName() + ".now";
+
+    private final RateLimitConfig config = ApplicationConfigFactory.applicationConfig().rateLimitConfig();
+    private final Map<String, Limit> limits = new HashMap<>();
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Context
+    private HttpServletRequest servletRequest;
+
+    public RateLimitFilter() {
+        for (RateLimitConfig.LimitConfig limit : config.limits()) {
+            limits.put(limit.name(), new Limit(limit));
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        final Limit limit = config.enabled() ? limits.get(limitName(request)) : null;
+        if(limit == null) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final TokenBucket bucket = limit.buckets.getUnchecked(clientOf(request));
+        if(!bucket.tryConsume(now)) {
+            limit.rejected.mark();
+            final Response response = Response
+                    .status(TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, seconds(bucket.untilNext(now)))
+                    .build();
+            putRateLimitHeaders(response.getHeaders(), bucket, now);
+            request.abortWith(response);
+            return;
+        }
+        request.setProperty(BUCKET_PROPERTY, bucket);
+        request.setProperty(NOW_PROPERTY, now);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        final TokenBucket bucket = (TokenBucket) request.getProperty(BUCKET_PROPERTY);
+        if(bucket != null) {
+            putRateLimitHeaders(response.getHeaders(), bucket, (Long) request.getProperty(NOW_PROPERTY));
+        }
+    }
+
+    private String limitName(final ContainerRequestContext request) {
+        final Method method = resourceInfo.getResourceMethod();
+        RateLimited rateLimited = method != null ? method.getAnnotation(RateLimited.class) : null;
+        if(rateLimited == null && resourceInfo.getResourceClass() != null) {
+            rateLimited = resourceInfo.getResourceClass().getAnnotation(RateLimited.class);
+        }
+        if(rateLimited == null) {
+            return "";
+        }
+        return !rateLimited.param().isEmpty()
+                && request.getUriInfo().getQueryParameters().containsKey(rateLimited.param())
+                ? rateLimited.paramLimit()
+                : rateLimited.value();
+    }
+
+    private String clientOf(final ContainerRequestContext request) {
+        final String key = config.clientHeader() != null
+                ? StringUtil.blankToNull(request.getHeaderString(config.clientHeader()))
+                : null;
+        if(key != null) {
+            return key;
+        }
+        return servletRequest != null ? servletRequest.getRemoteAddr() : "";
+    }
+
+    private static void putRateLimitHeaders(final MultivaluedMap<String, Object> headers, final TokenBucket bucket, final long now) {
+        headers.putSingle(X_RATE_LIMIT_LIMIT, bucket.burst());
+        headers.putSingle(X_RATE_LIMIT_REMAINING, bucket.remaining(now));
+        headers.putSingle(X_RATE_LIMIT_RESET, seconds(bucket.untilFull(now)));
+    }
+
+    // Rounded up, a client waiting this long will find a token
+    private static long seconds(final long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private class Limit {
+        final LoadingCache<String, TokenBucket> buckets;
+        final Meter rejected;
+
+        Limit(final RateLimitConfig.LimitConfig limit) {
+            buckets = CacheBuilder.newBuilder()
+                    .maximumSize(config.maxClients())
+                    .expireAfterAccess(config.expireAfterAccessSeconds(), TimeUnit.SECONDS)
+                    .build(CacheLoader.from(client -> new TokenBucket(limit.requestsPerSecond(), limit.burst(), System.nanoTime())));
+
+            final String name = MetricRegistry.name(METRIC_PREFIX, limit.name());
+            rejected = Metrics.registry().meter(MetricRegistry.name(name, "rejected"));
+            Metrics.registerGauge(MetricRegistry.name(name, "clients"), (Gauge<Long>) buckets::size);
+        }
+    }
+}
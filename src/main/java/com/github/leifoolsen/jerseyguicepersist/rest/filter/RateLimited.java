@@ -0,0 +1,28 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.filter;
+
+import javax.ws.rs.NameBinding;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds {@link RateLimitFilter} to a resource method. The value names the limit in
+ * {@code rateLimitConfig.limits}, e.g. "list". Methods with a name not configured are not limited.
+ *
+ * A method serving two kinds of request, told apart by a query parameter, may charge the second kind
+ * to another limit, e.g. {@code @RateLimited(value = "list", param = "id", paramLimit = "lookup")}.
+ */
+@NameBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface RateLimited {
+    String value() default "";
+
+    /**
+     * Query parameter that, when present in the request, selects {@link #paramLimit()} instead of {@link #value()}
+     */
+    String param() default "";
+
+    String paramLimit() default "";
+}
@@ -0,0 +1,68 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.filter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as a generic cell rate algorithm (GCRA).
+ *
+ * Instead of a token count and a refill timestamp, the bucket keeps one value: the theoretical arrival time,
+ * the time at which the bucket would be full again. A request is allowed if that time, advanced by one
+ * emission interval, is no more than {@code burst} intervals ahead of now. Taking a token is a single
+ * compare-and-set, so concurrent requests from one client never block each other.
+ *
+ * All times are {@link System#nanoTime()} values.
+ */
+class TokenBucket {
+
+    private final int burst;
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong tat;
+
+    TokenBucket(final double requestsPerSecond, final int burst, final long now) {
+        this.burst = burst;
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.tolerance = interval * burst;
+        this.tat = new AtomicLong(now);
+    }
+
+    int burst() { return burst; }
+
+    /**
+     * @return true if a token was taken
+     */
+    boolean tryConsume(final long now) {
+        for (;;) {
+            final long t = tat.get();
+            final long next = Math.max(t, now) + interval;
+            if(next - now > tolerance) {
+                return false;
+            }
+            if(tat.compareAndSet(t, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return tokens left
+     */
+    int remaining(final long now) {
+        return (int) Math.max(0, (now + tolerance - Math.max(tat.get(), now)) / interval);
+    }
+
+    /**
+     * @return nanoseconds until the bucket is full
+     */
+    long untilFull(final long now) {
+        return Math.max(0, tat.get() - now);
+    }
+
+    /**
+     * @return nanoseconds until the next token
+     */
+    long untilNext(final long now) {
+        return Math.max(0, Math.max(tat.get(), now) + interval - tolerance - now);
+    }
+}
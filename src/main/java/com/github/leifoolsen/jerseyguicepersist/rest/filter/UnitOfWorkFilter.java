@@ -1,5 +1,7 @@
 package com.github.leifoolsen.jerseyguicepersist.rest.filter;
 
+import com.github.leifoolsen.jerseyguicepersist.config.RepositoryConfig;
+import com.github.leifoolsen.jerseyguicepersist.guice.LazyUnitOfWork;
 import com.google.inject.persist.UnitOfWork;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,9 +11,21 @@ import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.ext.Provider;
 import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Runs each request in a unit of work. Asynchronous resource methods, with a {@link Suspended} parameter,
+ * are skipped: their database work runs in a unit of work on another thread, and the response filter
+ * runs on the thread that resumes the response, not on the request thread.
+ */
 @Provider
 public class UnitOfWorkFilter implements ContainerRequestFilter, ContainerResponseFilter {
 
@@ -19,16 +33,24 @@ public class UnitOfWorkFilter implements ContainerRequestFilter, ContainerRespon
 
     private UnitOfWork unitOfWork;
 
+    private final Map<Method, Boolean> suspended = new ConcurrentHashMap<>();
+
+    @Context
+    private ResourceInfo resourceInfo;
+
     @Inject
-    public UnitOfWorkFilter(UnitOfWork unitOfWork) {
-        this.unitOfWork = unitOfWork;
+    public UnitOfWorkFilter(UnitOfWork unitOfWork, LazyUnitOfWork lazyUnitOfWork, RepositoryConfig config) {
+        this.unitOfWork = config.lazyUnitOfWork() ? lazyUnitOfWork : unitOfWork;
         logger.debug(this.getClass().getSimpleName() + " provider created");
     }
 
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
         //logger.debug(">>> Request  filter");
-        unitOfWork.begin();
+        final Method method = resourceInfo.getResourceMethod();
+        if(method == null || !suspended.computeIfAbsent(method, UnitOfWorkFilter::hasSuspendedParameter)) {
+            unitOfWork.begin();
+        }
     }
 
     @Override
@@ -36,4 +58,15 @@ public class UnitOfWorkFilter implements ContainerRequestFilter, ContainerRespon
         //logger.debug("<<< Response filter");
         unitOfWork.end();
     }
-}
\ No newline at end of file
+
+    private static boolean hasSuspendedParameter(final Method method) {
+        for (Annotation[] annotations : method.getParameterAnnotations()) {
+            for (Annotation annotation : annotations) {
+                if(annotation instanceof Suspended) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
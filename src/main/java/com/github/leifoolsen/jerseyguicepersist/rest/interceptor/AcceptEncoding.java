@@ -0,0 +1,65 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.interceptor;
+
+import com.google.common.base.Splitter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Content coding negotiation, see: https://tools.ietf.org/html/rfc7231#section-5.3.4
+ */
+final class AcceptEncoding {
+    private static final Splitter COMMA = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final Splitter SEMICOLON = Splitter.on(';').trimResults();
+
+    private AcceptEncoding() {}
+
+    /**
+     * @param acceptEncoding the Accept-Encoding request header, may be null
+     * @param supported supported codings, in order of preference
+     * @return the supported coding with the highest q-value, the first in {@code supported} on a tie,
+     *      or null if none is acceptable
+     */
+    static String negotiate(final String acceptEncoding, final List<String> supported) {
+        if(acceptEncoding == null) {
+            return null;
+        }
+        final Map<String, Double> q = new HashMap<>();
+        for (String coding : COMMA.split(acceptEncoding)) {
+            final List<String> parts = SEMICOLON.splitToList(coding);
+            final Double value = qValue(parts);
+            if(value != null) {
+                q.put(parts.get(0).toLowerCase(Locale.ROOT), value);
+            }
+        }
+
+        String result = null;
+        double best = 0;
+        for (String coding : supported) {
+            final Double value = q.containsKey(coding) ? q.get(coding) : q.get("*");
+            if(value != null && value > best) {
+                result = coding;
+                best = value;
+            }
+        }
+        return result;
+    }
+
+    // null if malformed
+    private static Double qValue(final List<String> parts) {
+        for (String parameter : parts.subList(1, parts.size())) {
+            if(parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    final double q = Double.parseDouble(parameter.substring(2));
+                    return q >= 0 && q <= 1 ? q : null;
+                }
+                catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return 1.0;
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.interceptor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a body of at least {@code minSize} bytes with a pooled deflater; a smaller body is written as is.
+ *
+ * Up to {@code minSize} bytes are held back until the size is known. {@code onCompress} runs when the body
+ * reaches {@code minSize}, before anything is written to the underlying stream, so it may still set headers.
+ * A flush before then is deferred.
+ */
+class CompressingOutputStream extends OutputStream {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    interface Listener {
+        void onCompress();
+
+        void onClose(long bytesIn, long bytesOut, long nanos);
+
+        void onSkip();
+    }
+
+    private final OutputStream out;
+    private final DeflaterPool pool;
+    private final int minSize;
+    private final Listener listener;
+
+    private byte[] pending;
+    private int pendingCount;
+    private boolean decided;
+    private boolean closed;
+
+    private DeflaterPool.PooledDeflater pooled;
+    private long bytesOut;
+    private long nanos;
+
+    CompressingOutputStream(final OutputStream out, final DeflaterPool pool, final int minSize, final Listener listener) {
+        this.out = out;
+        this.pool = pool;
+        this.minSize = minSize;
+        this.listener = listener;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if(len == 0) {
+            return;
+        }
+        if(decided) {
+            if(pooled != null) {
+                compress(b, off, len);
+            }
+            else {
+                out.write(b, off, len);
+            }
+            return;
+        }
+        if(pendingCount + len < minSize) {
+            if(pending == null) {
+                pending = new byte[minSize];
+            }
+            System.arraycopy(b, off, pending, pendingCount, len);
+            pendingCount += len;
+            return;
+        }
+
+        decided = true;
+        listener.onCompress();
+        pooled = pool.borrow();
+        if(pool.gzip()) {
+            out.write(GZIP_HEADER);
+            bytesOut += GZIP_HEADER.length;
+        }
+        if(pendingCount > 0) {
+            compress(pending, 0, pendingCount);
+            pending = null;
+        }
+        compress(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(!decided) {
+            return;
+        }
+        if(pooled != null) {
+            deflate(Deflater.SYNC_FLUSH);
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if(pooled != null) {
+                pooled.deflater.finish();
+                deflate(Deflater.NO_FLUSH);
+                if(pool.gzip()) {
+                    writeTrailer();
+                }
+                listener.onClose(pooled.deflater.getBytesRead(), bytesOut, nanos);
+            }
+            else {
+                if(pendingCount > 0) {
+                    out.write(pending, 0, pendingCount);
+                }
+                listener.onSkip();
+            }
+        }
+        finally {
+            if(pooled != null) {
+                pool.release(pooled);
+                pooled = null;
+            }
+            out.close();
+        }
+    }
+
+    private void compress(final byte[] b, final int off, final int len) throws IOException {
+        if(pool.gzip()) {
+            pooled.crc.update(b, off, len);
+        }
+        pooled.deflater.setInput(b, off, len);
+        deflate(Deflater.NO_FLUSH);
+    }
+
+    // Until the deflater needs more input, or is finished
+    private void deflate(final int flush) throws IOException {
+        final long start = System.nanoTime();
+        int n;
+        while ((n = pooled.deflater.deflate(pooled.buffer, 0, pooled.buffer.length, flush)) > 0) {
+            out.write(pooled.buffer, 0, n);
+            bytesOut += n;
+        }
+        nanos += System.nanoTime() - start;
+    }
+
+    // CRC-32 and size of the uncompressed data, little-endian
+    private void writeTrailer() throws IOException {
+        final byte[] trailer = new byte[8];
+        writeInt((int) pooled.crc.getValue(), trailer, 0);
+        writeInt((int) pooled.deflater.getBytesRead(), trailer, 4);
+        out.write(trailer);
+        bytesOut += trailer.length;
+    }
+
+    private static void writeInt(final int i, final byte[] b, final int offset) {
+        b[offset] = (byte) i;
+        b[offset + 1] = (byte) (i >> 8);
+        b[offset + 2] = (byte) (i >> 16);
+        b[offset + 3] = (byte) (i >> 24);
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.interceptor;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.config.CompressionConfig;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A writer interceptor that compresses the entity body of {@link Compress} responses with gzip or deflate,
+ * whichever the client accepts with the highest q-value, see {@link AcceptEncoding}.
+ *
+ * Bodies smaller than {@code compressionConfig.minSize} are sent as is. Deflaters and their buffers come from a
+ * {@link DeflaterPool} per coding. Responses carry {@code Vary: Accept-Encoding}, compressed or not.
+ * The metrics "compression.&lt;Resource.method&gt;.ratio" (compressed size, in percent of the original),
+ * ".time" (time spent compressing) and ".skipped" (bodies below minSize) are created on first use.
+ * See: https://jersey.java.net/documentation/latest/user-guide.html#filters-and-interceptors
+ */
+
+@Provider  // => Automatically discovered by the JAX-RS runtime during a provider scanning phase.
+
+@Compress  // => Only resource methods annotated with @Compress will return compressed response
+           // => Remove this @Compress annotation if you want all responses compressed
+
+public class CompressionWriterInterceptor implements WriterInterceptor {
+
+    private static final String METRIC_PREFIX = "compression";
+
+    private final CompressionConfig config = ApplicationConfigFactory.applicationConfig().compressionConfig();
+    private final Map<String, DeflaterPool> pools = new HashMap<>();
+    private final Map<Method, EndpointMetrics> metrics = new ConcurrentHashMap<>();
+
+    @Context
+    private HttpHeaders httpHeaders;
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    public CompressionWriterInterceptor() {
+        for (String coding : config.encodings()) {
+            pools.put(coding, new DeflaterPool(coding, config.level(), config.poolSize(), config.bufferSize()));
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        final MultivaluedMap<String, Object> headers = context.getHeaders();
+        if(!config.enabled() || headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            context.proceed();
+            return;
+        }
+        addVary(headers);
+
+        final String coding = AcceptEncoding.negotiate(httpHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING), config.encodings());
+        if(coding == null) {
+            context.proceed();
+            return;
+        }
+
+        final EndpointMetrics endpoint = endpointMetrics();
+        context.setOutputStream(new CompressingOutputStream(context.getOutputStream(), pools.get(coding), config.minSize(),
+                new CompressingOutputStream.Listener() {
+                    @Override
+                    public void onCompress() {
+                        headers.putSingle(HttpHeaders.CONTENT_ENCODING, coding);
+                        headers.remove(HttpHeaders.CONTENT_LENGTH);
+                    }
+
+                    @Override
+                    public void onClose(final long bytesIn, final long bytesOut, final long nanos) {
+                        if(endpoint != null) {
+                            endpoint.ratio.update(bytesIn > 0 ? bytesOut * 100 / bytesIn : 100);
+                            endpoint.time.update(nanos, TimeUnit.NANOSECONDS);
+                        }
+                    }
+
+                    @Override
+                    public void onSkip() {
+                        if(endpoint != null) {
+                            endpoint.skipped.mark();
+                        }
+                    }
+                }));
+        context.proceed();
+    }
+
+    private static void addVary(final MultivaluedMap<String, Object> headers) {
+        final Object vary = headers.getFirst(HttpHeaders.VARY);
+        if(vary == null) {
+            headers.putSingle(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        else if(!vary.toString().toLowerCase().contains("accept-encoding")) {
+            headers.putSingle(HttpHeaders.VARY, vary + ", " + HttpHeaders.ACCEPT_ENCODING);
+        }
+    }
+
+    private EndpointMetrics endpointMetrics() {
+        final Method method = resourceInfo.getResourceMethod();
+        return method != null
+                ? metrics.computeIfAbsent(method, m -> new EndpointMetrics(resourceInfo.getResourceClass(), m))
+                : null;
+    }
+
+    private static class EndpointMetrics {
+        final Histogram ratio;
+        final Timer time;
+        final Meter skipped;
+
+        EndpointMetrics(final Class<?> resourceClass, final Method method) {
+            final String name = MetricRegistry.name(METRIC_PREFIX, resourceClass.getSimpleName() + "." + method.getName());
+            ratio = Metrics.registry().histogram(MetricRegistry.name(name, "ratio"));
+            time = Metrics.registry().timer(MetricRegistry.name(name, "time"));
+            skipped = Metrics.registry().meter(MetricRegistry.name(name, "skipped"));
+        }
+    }
+}
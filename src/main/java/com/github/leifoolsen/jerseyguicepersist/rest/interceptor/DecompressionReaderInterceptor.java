@@ -0,0 +1,69 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.interceptor;
+
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.config.DecompressionConfig;
+import org.glassfish.jersey.server.CloseableService;
+
+import javax.ws.rs.NotSupportedException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A reader interceptor that inflates request bodies sent with {@code Content-Encoding: gzip} or {@code deflate},
+ * as the body is read, see {@link InflatingInputStream}. A body over {@code decompressionConfig.maxCompressedSize}
+ * or {@code maxInflatedSize} is rejected with {@code 413 Request Entity Too Large}; any other content coding with
+ * {@code 415 Unsupported Media Type}.
+ *
+ * The inflating stream is closed when the request completes, through the {@link CloseableService}, so its inflater
+ * goes back to the pool even if the body is not read to the end.
+ *
+ * The client side counterpart, inflating responses, is {@link GZIPReaderInterceptor}.
+ * See: https://jersey.java.net/documentation/latest/user-guide.html#filters-and-interceptors
+ */
+@Provider
+public class DecompressionReaderInterceptor implements ReaderInterceptor {
+
+    private final DecompressionConfig config = ApplicationConfigFactory.applicationConfig().decompressionConfig();
+    private final Map<String, InflaterPool> pools = new HashMap<>();
+
+    @Context
+    private CloseableService closeableService;
+
+    public DecompressionReaderInterceptor() {
+        for (String coding : new String[] {"gzip", "deflate"}) {
+            pools.put(coding, new InflaterPool(coding, config.poolSize(), config.bufferSize()));
+        }
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException, WebApplicationException {
+        final MultivaluedMap<String, String> headers = context.getHeaders();
+        final String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if(!config.enabled() || contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding.trim())) {
+            return context.proceed();
+        }
+
+        final InflaterPool pool = pools.get(contentEncoding.trim().toLowerCase(Locale.ROOT));
+        if(pool == null) {
+            throw new NotSupportedException("Unsupported Content-Encoding: " + contentEncoding);
+        }
+
+        // The body is no longer encoded, and its length is unknown until inflated
+        headers.remove(HttpHeaders.CONTENT_ENCODING);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        final InflatingInputStream body = new InflatingInputStream(context.getInputStream(), pool,
+                config.maxCompressedSize(), config.maxInflatedSize());
+        closeableService.add(body);
+        context.setInputStream(body);
+        return context.proceed();
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.interceptor;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Pool of deflaters, with their output buffer and checksum, for one content coding.
+ * A deflater holds native memory until it is ended, so deflaters are reused rather than created per response.
+ * Deflaters borrowed when the pool is empty are created, and ended on release if the pool is full.
+ * The metric "compression.&lt;coding&gt;.deflatersCreated" shows the churn.
+ */
+class DeflaterPool {
+
+    static class PooledDeflater {
+        final Deflater deflater;
+        final CRC32 crc = new CRC32();
+        final byte[] buffer;
+
+        PooledDeflater(final Deflater deflater, final int bufferSize) {
+            this.deflater = deflater;
+            this.buffer = new byte[bufferSize];
+        }
+    }
+
+    private final String coding;
+    private final int level;
+    private final int bufferSize;
+    private final BlockingQueue<PooledDeflater> idle;
+    private final Meter created;
+
+    DeflaterPool(final String coding, final int level, final int poolSize, final int bufferSize) {
+        this.coding = coding;
+        this.level = level;
+        this.bufferSize = bufferSize;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.created = Metrics.registry().meter(MetricRegistry.name("compression", coding, "deflatersCreated"));
+    }
+
+    String coding() { return coding; }
+
+    /**
+     * @return true if the coding is gzip: raw deflate data in a gzip header and trailer, else zlib wrapped data
+     */
+    boolean gzip() { return "gzip".equals(coding); }
+
+    PooledDeflater borrow() {
+        final PooledDeflater pooled = idle.poll();
+        if(pooled != null) {
+            return pooled;
+        }
+        created.mark();
+        return new PooledDeflater(new Deflater(level, gzip()), bufferSize);
+    }
+
+    void release(final PooledDeflater pooled) {
+        pooled.deflater.reset();
+        pooled.crc.reset();
+        if(!idle.offer(pooled)) {
+            pooled.deflater.end();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.interceptor;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of inflaters, with their input buffer and checksum, for one content coding, see {@link DeflaterPool}.
+ * The metric "decompression.&lt;coding&gt;.inflatersCreated" shows the churn.
+ */
+class InflaterPool {
+
+    static class PooledInflater {
+        final Inflater inflater;
+        final CRC32 crc = new CRC32();
+        final byte[] buffer;
+
+        PooledInflater(final Inflater inflater, final int bufferSize) {
+            this.inflater = inflater;
+            this.buffer = new byte[bufferSize];
+        }
+    }
+
+    private final String coding;
+    private final int bufferSize;
+    private final BlockingQueue<PooledInflater> idle;
+    private final Meter created;
+
+    InflaterPool(final String coding, final int poolSize, final int bufferSize) {
+        this.coding = coding;
+        this.bufferSize = bufferSize;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.created = Metrics.registry().meter(MetricRegistry.name("decompression", coding, "inflatersCreated"));
+    }
+
+    String coding() { return coding; }
+
+    /**
+     * @return true if the coding is gzip: raw deflate data in a gzip header and trailer, else zlib wrapped data
+     */
+    boolean gzip() { return "gzip".equals(coding); }
+
+    PooledInflater borrow() {
+        final PooledInflater pooled = idle.poll();
+        if(pooled != null) {
+            return pooled;
+        }
+        created.mark();
+        return new PooledInflater(new Inflater(gzip()), bufferSize);
+    }
+
+    void release(final PooledInflater pooled) {
+        pooled.inflater.reset();
+        pooled.crc.reset();
+        if(!idle.offer(pooled)) {
+            pooled.inflater.end();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.interceptor;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates a gzip or deflate (zlib) body with a pooled inflater, as it is read.
+ *
+ * The compressed and the inflated size are counted while streaming; a body over either limit fails with
+ * {@code 413 Request Entity Too Large} as soon as the limit is passed, before the rest is read. The failure is a
+ * {@link WebApplicationException}, not an {@link IOException}, so readers that map I/O errors to
+ * {@code 400 Bad Request} do not mask it. A corrupt body fails with {@link ZipException}.
+ *
+ * The inflater is borrowed on the first read, and goes back to the pool at the end of the body, on failure, or on
+ * close. Readers that stop before the end of the body, e.g. at the closing bracket of a JSON array, rely on close.
+ */
+class InflatingInputStream extends InputStream {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final InputStream in;
+    private final InflaterPool pool;
+    private final long maxCompressedSize;
+    private final long maxInflatedSize;
+
+    private InflaterPool.PooledInflater pooled;
+    private long compressedSize;
+    private long inflatedSize;
+    private int filled;
+    private boolean headerRead;
+    private boolean eof;
+    private boolean released;
+
+    InflatingInputStream(final InputStream in, final InflaterPool pool, final long maxCompressedSize, final long maxInflatedSize) {
+        this.in = in;
+        this.pool = pool;
+        this.maxCompressedSize = maxCompressedSize;
+        this.maxInflatedSize = maxInflatedSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if(eof) {
+            return -1;
+        }
+        if(released) {
+            throw new IOException("Stream closed");
+        }
+        if(len == 0) {
+            return 0;
+        }
+        if(pooled == null) {
+            pooled = pool.borrow();
+        }
+        try {
+            if(!headerRead) {
+                headerRead = true;
+                if(pool.gzip()) {
+                    readGzipHeader();
+                }
+            }
+            while (true) {
+                final int n = pooled.inflater.inflate(b, off, len);
+                if(n > 0) {
+                    inflatedSize += n;
+                    if(inflatedSize > maxInflatedSize) {
+                        throw tooLarge("Inflated request body exceeds " + maxInflatedSize + " bytes");
+                    }
+                    if(pool.gzip()) {
+                        pooled.crc.update(b, off, n);
+                    }
+                    return n;
+                }
+                if(pooled.inflater.finished()) {
+                    if(pool.gzip()) {
+                        readGzipTrailer();
+                    }
+                    eof = true;
+                    release();
+                    return -1;
+                }
+                if(pooled.inflater.needsDictionary()) {
+                    throw new ZipException("Preset dictionary is not supported");
+                }
+                if(pooled.inflater.needsInput()) {
+                    fill();
+                }
+            }
+        }
+        catch (DataFormatException e) {
+            release();
+            throw new ZipException("Corrupt " + pool.coding() + " request body: " + e.getMessage());
+        }
+        catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        release();
+        in.close();
+    }
+
+    private void release() {
+        released = true;
+        if(pooled != null) {
+            pool.release(pooled);
+            pooled = null;
+        }
+    }
+
+    private void fill() throws IOException {
+        filled = in.read(pooled.buffer, 0, pooled.buffer.length);
+        if(filled == -1) {
+            throw new EOFException("Unexpected end of " + pool.coding() + " request body");
+        }
+        count(filled);
+        pooled.inflater.setInput(pooled.buffer, 0, filled);
+    }
+
+    private void count(final int n) {
+        compressedSize += n;
+        if(compressedSize > maxCompressedSize) {
+            throw tooLarge("Compressed request body exceeds " + maxCompressedSize + " bytes");
+        }
+    }
+
+    private static WebApplicationException tooLarge(final String message) {
+        return new WebApplicationException(message, Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    // See: https://tools.ietf.org/html/rfc1952#page-5
+    private void readGzipHeader() throws IOException {
+        if(readUShort() != GZIP_MAGIC) {
+            throw new ZipException("Not in gzip format");
+        }
+        if(readUByte() != 8) {
+            throw new ZipException("Unsupported gzip compression method");
+        }
+        final int flags = readUByte();
+        skip(6);  // MTIME, XFL, OS
+        if((flags & FEXTRA) == FEXTRA) {
+            skip(readUShort());
+        }
+        if((flags & FNAME) == FNAME) {
+            while (readUByte() != 0) {
+                // File name
+            }
+        }
+        if((flags & FCOMMENT) == FCOMMENT) {
+            while (readUByte() != 0) {
+                // Comment
+            }
+        }
+        if((flags & FHCRC) == FHCRC) {
+            skip(2);
+        }
+    }
+
+    // CRC-32 and size of the inflated data, little-endian. Bytes after the trailer are ignored
+    private void readGzipTrailer() throws IOException {
+        final int remaining = pooled.inflater.getRemaining();
+        final byte[] trailer = new byte[8];
+        final int buffered = Math.min(remaining, trailer.length);
+        System.arraycopy(pooled.buffer, filled - remaining, trailer, 0, buffered);
+        for (int i = buffered; i < trailer.length; i++) {
+            trailer[i] = (byte) readUByte();
+        }
+        if(readInt(trailer, 0) != (int) pooled.crc.getValue() || readInt(trailer, 4) != (int) pooled.inflater.getBytesWritten()) {
+            throw new ZipException("Corrupt gzip trailer");
+        }
+    }
+
+    private int readUByte() throws IOException {
+        final int b = in.read();
+        if(b == -1) {
+            throw new EOFException("Unexpected end of gzip request body");
+        }
+        count(1);
+        return b;
+    }
+
+    private int readUShort() throws IOException {
+        return readUByte() | readUByte() << 8;
+    }
+
+    private void skip(final int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readUByte();
+        }
+    }
+
+    private static int readInt(final byte[] b, final int offset) {
+        return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8 | (b[offset + 2] & 0xff) << 16 | (b[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.leifoolsen.jerseyguicepersist.domain;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class IdGeneratorTest {
+
+    @After
+    public void after() {
+        IdGenerator.use(IdGenerator.RANDOM);
+    }
+
+    @Test
+    public void timeOrderedIdShouldBeVersion7WithTimestampPrefix() {
+        final long millis = 1444000000000L;
+        final UUID uuid = IdGenerator.timeOrdered(millis, new Random(42));
+
+        assertThat(uuid.version(), equalTo(7));
+        assertThat(uuid.variant(), equalTo(2));
+        assertThat(uuid.getMostSignificantBits() >>> 16, equalTo(millis));
+    }
+
+    @Test
+    public void timeOrderedIdsShouldSortByCreationTime() {
+        final Random random = new Random(42);
+        final String earlier = IdGenerator.timeOrdered(1444000000000L, random).toString();
+        final String later = IdGenerator.timeOrdered(1444000000001L, random).toString();
+
+        assertThat(earlier.compareTo(later), lessThan(0));
+    }
+
+    @Test
+    public void newUsersShouldUseGeneratorInUse() {
+        IdGenerator.use(IdGenerator.TIME_ORDERED);
+        assertThat(UUID.fromString(new User("U", "p", true).getId()).version(), equalTo(7));
+
+        IdGenerator.use(IdGenerator.RANDOM);
+        assertThat(UUID.fromString(new User("U", "p", true).getId()).version(), equalTo(4));
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.leifoolsen.jerseyguicepersist.embeddedjetty;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/2 cleartext client for tests. GET requests, multiplexed on one connection, using prior knowledge.
+ */
+public class H2cClient implements AutoCloseable {
+
+    public static class Result {
+        private final int status;
+        private final String content;
+
+        Result(final int status, final String content) {
+            this.status = status;
+            this.content = content;
+        }
+
+        public int status() { return status; }
+
+        public String content() { return content; }
+    }
+
+    private final HTTP2Client client = new HTTP2Client();
+    private final Session session;
+
+    public H2cClient(final URI uri) throws Exception {
+        client.start();
+        final FuturePromise<Session> promise = new FuturePromise<>();
+        client.connect(new InetSocketAddress(uri.getHost(), uri.getPort()), new ServerSessionListener.Adapter(), promise);
+        session = promise.get(5, TimeUnit.SECONDS);
+    }
+
+    public CompletableFuture<Result> get(final URI uri, final HttpFields headers) {
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        final MetaData.Request request = new MetaData.Request("GET", new HttpURI(uri.toString()), HttpVersion.HTTP_2, headers);
+
+        session.newStream(new HeadersFrame(0, request, null, true), new Promise.Adapter<Stream>() {
+            @Override
+            public void failed(final Throwable x) {
+                result.completeExceptionally(x);
+            }
+        }, new Stream.Listener.Adapter() {
+            private int status;
+            private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+            @Override
+            public void onHeaders(final Stream stream, final HeadersFrame frame) {
+                if(frame.getMetaData() instanceof MetaData.Response) {
+                    status = ((MetaData.Response) frame.getMetaData()).getStatus();
+                }
+                if(frame.isEndStream()) {
+                    complete();
+                }
+            }
+
+            @Override
+            public void onData(final Stream stream, final DataFrame frame, final Callback callback) {
+                final ByteBuffer data = frame.getData();
+                while (data.hasRemaining()) {
+                    content.write(data.get());
+                }
+                callback.succeeded();
+                if(frame.isEndStream()) {
+                    complete();
+                }
+            }
+
+            @Override
+            public void onReset(final Stream stream, final ResetFrame frame) {
+                result.completeExceptionally(new IllegalStateException("Stream reset, error " + frame.getError()));
+            }
+
+            private void complete() {
+                result.complete(new Result(status, new String(content.toByteArray(), StandardCharsets.UTF_8)));
+            }
+        });
+        return result;
+    }
+
+    public CompletableFuture<Result> get(final URI uri) {
+        return get(uri, new HttpFields());
+    }
+
+    @Override
+    public void close() throws Exception {
+        client.stop();
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.leifoolsen.jerseyguicepersist.embeddedjetty;
+
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.rest.api.UserResource;
+import com.github.leifoolsen.jerseyguicepersist.rest.application.ApplicationModel;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.server.Server;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Local load test: many small concurrent lookups, {@code GET /api/users/{id}}, over HTTP/1.1 with keep-alive,
+ * one request at a time on each of {@code CONCURRENCY} connections, and over h2c, multiplexed on one connection.
+ * Needs {@code http2c = true} in the server connector config, as in application-test.conf.
+ *
+ * Requests rotate over {@code API_KEYS} client keys, so the rate limit of a single client does not throttle
+ * the test. {@code CONCURRENCY} is kept below the initial admission control limit.
+ *
+ * Remove the {@code @Ignore} to run.
+ */
+public class Http2Benchmark {
+    private static final Logger logger = LoggerFactory.getLogger(Http2Benchmark.class);
+
+    private static final String SCOTT = "5c0f7d16-bb78-4832-95df-72e434251e10";
+    private static final int WARMUP = 5000;
+    private static final int REQUESTS = 50000;
+    private static final int CONCURRENCY = 16;
+    private static final int API_KEYS = 1000;
+    private static final String API_KEY = "X-API-Key";
+
+    @Test
+    @Ignore  // Benchmark, run manually
+    public void compareHttp11KeepAliveWithH2c() throws Exception {
+        ApplicationConfigFactory.load();
+
+        final Server server = JettyFactory.createServer(ApplicationConfigFactory.applicationConfig().jettyConfig());
+        JettyFactory.start(server);
+        try {
+            final URI uri = UriBuilder.fromUri(server.getURI())
+                    .path(ApplicationModel.APPLICATION_PATH)
+                    .path(UserResource.RESOURCE_PATH)
+                    .path(SCOTT)
+                    .build();
+
+            final HttpClient http11 = new HttpClient();
+            http11.setMaxConnectionsPerDestination(CONCURRENCY);
+            http11.start();
+            try {
+                benchmark("HTTP/1.1 keep-alive, " + CONCURRENCY + " connections", i -> {
+                    final CompletableFuture<Integer> status = new CompletableFuture<>();
+                    http11.newRequest(uri)
+                            .header(API_KEY, apiKey(i))
+                            .send(result -> status.complete(result.isFailed() ? -1 : result.getResponse().getStatus()));
+                    return status;
+                });
+            }
+            finally {
+                http11.stop();
+            }
+
+            try (H2cClient h2c = new H2cClient(uri)) {
+                benchmark("h2c, 1 connection", i -> {
+                    final HttpFields headers = new HttpFields();
+                    headers.put(API_KEY, apiKey(i));
+                    return h2c.get(uri, headers).handle((result, x) -> x != null ? -1 : result.status());
+                });
+            }
+        }
+        finally {
+            JettyFactory.stop(server);
+        }
+    }
+
+    private static void benchmark(final String name, final IntFunction<CompletableFuture<Integer>> request) throws Exception {
+        run(request, WARMUP);
+        final AtomicInteger failed = new AtomicInteger();
+        final long elapsed = run(request, REQUESTS, failed);
+        logger.info("{}: {} requests in {} ms, {} requests/s, {} failed", name, REQUESTS,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), REQUESTS * TimeUnit.SECONDS.toNanos(1) / elapsed, failed.get());
+    }
+
+    private static long run(final IntFunction<CompletableFuture<Integer>> request, final int requests) throws InterruptedException {
+        return run(request, requests, new AtomicInteger());
+    }
+
+    // At most CONCURRENCY requests in flight
+    private static long run(final IntFunction<CompletableFuture<Integer>> request, final int requests, final AtomicInteger failed)
+            throws InterruptedException {
+
+        final Semaphore inFlight = new Semaphore(CONCURRENCY);
+        final CountDownLatch done = new CountDownLatch(requests);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            request.apply(i).thenAccept(status -> {
+                if(status != 200) {
+                    failed.incrementAndGet();
+                }
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        return System.nanoTime() - start;
+    }
+
+    private static String apiKey(final int i) {
+        return "benchmark-" + (i % API_KEYS);
+    }
+}
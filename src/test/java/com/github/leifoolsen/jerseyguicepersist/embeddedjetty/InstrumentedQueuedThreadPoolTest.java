@@ -0,0 +1,73 @@
+package com.github.leifoolsen.jerseyguicepersist.embeddedjetty;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class InstrumentedQueuedThreadPoolTest {
+
+    private InstrumentedQueuedThreadPool pool;
+
+    @After
+    public void tearDown() throws Exception {
+        pool.stop();
+    }
+
+    @Test
+    public void shouldRejectJobsWhenBoundedQueueIsFull() throws Exception {
+        pool = new InstrumentedQueuedThreadPool(1, 1, 60000, new ArrayBlockingQueue<>(1));
+        pool.start();
+
+        final long rejected = Metrics.registry().meter(metric("rejected")).getCount();
+        final long waited = Metrics.registry().timer(metric("queueWait")).getCount();
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch queuedJobDone = new CountDownLatch(1);
+        pool.execute(() -> {
+            running.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(running.await(5, TimeUnit.SECONDS), is(true));
+        pool.execute(queuedJobDone::countDown);
+
+        assertThat(gauge("busyThreads"), equalTo(1));
+        assertThat(gauge("queueSize"), equalTo(1));
+        try {
+            pool.execute(() -> {});
+            fail("Expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException expected) {
+            // Thread busy, queue full
+        }
+        assertThat(Metrics.registry().meter(metric("rejected")).getCount(), equalTo(rejected + 1));
+
+        release.countDown();
+        assertThat(queuedJobDone.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(Metrics.registry().timer(metric("queueWait")).getCount(), equalTo(waited + 2));
+    }
+
+    private static String metric(final String name) {
+        return MetricRegistry.name(ThreadPoolMetrics.METRIC_PREFIX, name);
+    }
+
+    private static Object gauge(final String name) {
+        return Metrics.registry().getGauges().get(metric(name)).getValue();
+    }
+}
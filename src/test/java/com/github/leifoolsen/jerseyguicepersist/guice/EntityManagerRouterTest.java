@@ -0,0 +1,116 @@
+package com.github.leifoolsen.jerseyguicepersist.guice;
+
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfig;
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.config.PersistenceUnitConfig;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.repository.UserRepository;
+import com.github.leifoolsen.jerseyguicepersist.repository.UserWriteBehindQueue;
+import com.google.gson.Gson;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.persist.UnitOfWork;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Uses two H2 in-memory databases as stand-ins for a primary and a read replica. Nothing replicates
+ * between them, so where a read is served from tells which persistence unit it was routed to.
+ */
+public class EntityManagerRouterTest {
+
+    private static final String REPLICA_URL = "jdbc:h2:mem:replicadb;DB_CLOSE_DELAY=-1";
+
+    private static Injector injector;
+    private static UserRepository userRepository;
+    private static UnitOfWork unitOfWork;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        ApplicationConfigFactory.load();
+
+        assertThat("ApplicationConfig.stage() does NOT report Stage.TEST! " +
+                        "This could be a config error, or 'test-classes' is not on class path",
+                ApplicationConfigFactory.applicationConfig().stage(), is(ApplicationConfig.Stage.TEST));
+
+        final PersistenceUnitConfig readConfig = new Gson().fromJson("{" +
+                "name: 'jpa-example'," +
+                "properties: [" +
+                "  'javax.persistence.jdbc.driver = org.h2.Driver'," +
+                "  'javax.persistence.jdbc.url = " + REPLICA_URL + "'," +
+                "  'javax.persistence.jdbc.user = sa'," +
+                "  'javax.persistence.jdbc.password ='," +
+                "  'javax.persistence.schema-generation.database.action = drop-and-create'," +
+                "  'javax.persistence.sql-load-script-source = META-INF/import.sql'," +
+                "  'eclipselink.logging.level = WARNING'" +
+                "]}", PersistenceUnitConfig.class);
+
+        injector = Guice.createInjector(
+                new PersistenceModule(ApplicationConfigFactory.applicationConfig().persistenceUnitConfig(), readConfig),
+                new GuiceModule());
+
+        userRepository = injector.getInstance(UserRepository.class);
+        unitOfWork = injector.getInstance(UnitOfWork.class);
+
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             PreparedStatement ps = connection.prepareStatement(
+                     "INSERT INTO USER (ID, ACTIVE, USERNAME, PASSWORD, VERSION) VALUES (?, true, 'REPLICA-ONLY', 'r', 0)")) {
+            ps.setString(1, UUID.randomUUID().toString());
+            ps.executeUpdate();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        injector.getInstance(UserWriteBehindQueue.class).stop();
+        injector.getInstance(PersistenceInitializer.class).stop();
+    }
+
+    @Before
+    public void before() {
+        unitOfWork.begin();
+    }
+
+    @After
+    public void after() {
+        unitOfWork.end();
+    }
+
+    @Test
+    public void readOnlyMethodsShouldReadFromReplica() {
+        assertThat(userRepository.findByName("REPLICA-ONLY"), hasSize(1));
+        assertThat(userRepository.findByName("SCOTT"), hasSize(1));
+    }
+
+    @Test
+    public void writesShouldGoToPrimary() {
+        final User user = new User("PRIMARY-ONLY", "p", true);
+        userRepository.persist(user);
+
+        assertThat(userRepository.findByName("PRIMARY-ONLY"), is(empty()));
+        assertThat(userRepository.getEntityManager().find(User.class, user.getId()), is(notNullValue()));
+    }
+
+    @Test
+    public void findByIdShouldReadFromReplica() {
+        final String id = userRepository.findByName("REPLICA-ONLY").get(0).getId();
+
+        assertThat(userRepository.findById(id), is(notNullValue()));
+        assertThat(userRepository.getEntityManager().find(User.class, id), is(nullValue()));
+    }
+}
@@ -0,0 +1,247 @@
+package com.github.leifoolsen.jerseyguicepersist.guice;
+
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfig;
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.config.PersistenceUnitConfig;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.repository.LookupResult;
+import com.github.leifoolsen.jerseyguicepersist.repository.PersistResult;
+import com.github.leifoolsen.jerseyguicepersist.repository.UserRepository;
+import com.github.leifoolsen.jerseyguicepersist.repository.UserWriteBehindQueue;
+import com.google.gson.Gson;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.persist.UnitOfWork;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.persistence.EntityExistsException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Uses three H2 in-memory databases as shards. Each database is queried directly to check where a user was written.
+ */
+public class ShardRouterTest {
+
+    private static final String[] SHARD_URLS = {
+            "jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1",
+            "jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1",
+            "jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1",
+    };
+
+    private static Injector injector;
+    private static UserRepository userRepository;
+    private static ShardRouter shardRouter;
+    private static UnitOfWork unitOfWork;
+    private static final List<User> users = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        ApplicationConfigFactory.load();
+
+        assertThat("ApplicationConfig.stage() does NOT report Stage.TEST! " +
+                        "This could be a config error, or 'test-classes' is not on class path",
+                ApplicationConfigFactory.applicationConfig().stage(), is(ApplicationConfig.Stage.TEST));
+
+        final PersistenceUnitConfig config = new Gson().fromJson("{" +
+                "name: 'jpa-example'," +
+                "shardUrls: ['" + SHARD_URLS[1] + "', '" + SHARD_URLS[2] + "']," +
+                "properties: [" +
+                "  'javax.persistence.jdbc.driver = org.h2.Driver'," +
+                "  'javax.persistence.jdbc.url = " + SHARD_URLS[0] + "'," +
+                "  'javax.persistence.jdbc.user = sa'," +
+                "  'javax.persistence.jdbc.password ='," +
+                "  'javax.persistence.schema-generation.database.action = drop-and-create'," +
+                "  'eclipselink.session-name = shard-test'," +
+                "  'eclipselink.logging.level = WARNING'" +
+                "]}", PersistenceUnitConfig.class);
+
+        injector = Guice.createInjector(new PersistenceModule(config, null), new GuiceModule());
+
+        userRepository = injector.getInstance(UserRepository.class);
+        shardRouter = injector.getInstance(ShardRouter.class);
+        unitOfWork = injector.getInstance(UnitOfWork.class);
+
+        unitOfWork.begin();
+        try {
+            for (int i = 0; i < 30; i++) {
+                final User user = new User(String.format("SHARDED-%02d", i), "s", true);
+                userRepository.persist(user);
+                users.add(user);
+            }
+        }
+        finally {
+            unitOfWork.end();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        injector.getInstance(UserWriteBehindQueue.class).stop();
+        injector.getInstance(PersistenceInitializer.class).stop();
+    }
+
+    @Before
+    public void before() {
+        unitOfWork.begin();
+    }
+
+    @After
+    public void after() {
+        unitOfWork.end();
+    }
+
+    @Test
+    public void shouldBeSharded() {
+        assertThat(shardRouter.enabled(), is(true));
+        assertThat(shardRouter.shardCount(), is(3));
+        assertThat(shardRouter.entityManagerFactories(), hasSize(3));
+    }
+
+    @Test
+    public void usersShouldBeWrittenToTheirShard() throws Exception {
+        final int[] expected = new int[SHARD_URLS.length];
+        for (User user : users) {
+            final int shard = shardRouter.shardOf(user.getId());
+            expected[shard]++;
+            assertThat(user.getUsername() + " not found in shard " + shard, count(shard, user.getId()), is(1));
+        }
+        for (int shard = 0; shard < SHARD_URLS.length; shard++) {
+            assertThat("No users in shard " + shard, expected[shard], greaterThan(0));
+        }
+    }
+
+    @Test
+    public void findByIdShouldReadFromShard() {
+        for (User user : users) {
+            assertThat(userRepository.findById(user.getId()), is(notNullValue()));
+        }
+    }
+
+    @Test
+    public void findByIdsShouldQueryAllShards() {
+        final List<String> ids = new ArrayList<>();
+        for (User user : users) {
+            ids.add(user.getId());
+        }
+        ids.add("no-such-id");
+
+        final List<LookupResult> results = userRepository.findByIds(ids);
+        assertThat(results, hasSize(ids.size()));
+        for (int i = 0; i < users.size(); i++) {
+            assertThat(results.get(i).getId(), is(ids.get(i)));
+            assertThat(results.get(i).isFound(), is(true));
+        }
+        assertThat(results.get(users.size()).isFound(), is(false));
+    }
+
+    @Test
+    public void findByNameShouldMergeShardsInUsernameOrder() {
+        final List<User> found = userRepository.findByName("SHARDED-%");
+        assertThat(found, hasSize(users.size()));
+        for (int i = 0; i < users.size(); i++) {
+            assertThat(found.get(i).getUsername(), is(users.get(i).getUsername()));
+        }
+    }
+
+    @Test
+    public void findPageByNameShouldPageAcrossShards() {
+        final List<User> first = userRepository.findPageByName("SHARDED-%", null, null, 4);
+        assertThat(usernames(first), contains("SHARDED-00", "SHARDED-01", "SHARDED-02", "SHARDED-03"));
+
+        final User last = first.get(first.size() - 1);
+        final List<User> next = userRepository.findPageByName("SHARDED-%", last.getUsername(), last.getId(), 4);
+        assertThat(usernames(next), contains("SHARDED-04", "SHARDED-05", "SHARDED-06", "SHARDED-07"));
+    }
+
+    @Test
+    public void forEachByNameShouldMergeShardCursors() {
+        final List<String> usernames = new ArrayList<>();
+        userRepository.forEachByName("SHARDED-%", 5, user -> usernames.add(user.getUsername()));
+
+        assertThat(usernames, hasSize(users.size()));
+        final List<String> sorted = new ArrayList<>(usernames);
+        sorted.sort(null);
+        assertThat(usernames, is(sorted));
+    }
+
+    @Test(expected = EntityExistsException.class)
+    public void persistShouldRejectUsernameTakenOnAnotherShard() {
+        final User existing = users.get(0);
+        userRepository.persist(onOtherShard(existing, existing.getUsername()));
+    }
+
+    @Test
+    public void replaceShouldRejectUsernameTakenOnAnotherShard() {
+        final User existing = users.get(1);
+        final User renamed = onOtherShard(existing, "RENAME-ACROSS-SHARDS");
+        userRepository.persist(renamed);
+        try {
+            userRepository.replace(renamed.getId(), userRepository.findVersionById(renamed.getId()), new User(existing.getUsername(), "s", true));
+            fail("Expected EntityExistsException");
+        }
+        catch (EntityExistsException expected) {
+            // ok
+        }
+        assertThat(userRepository.findById(renamed.getId()).getUsername(), is("RENAME-ACROSS-SHARDS"));
+    }
+
+    @Test
+    public void persistAllShouldRejectUsernameRepeatedAcrossShards() {
+        final User first = new User("TWICE-ACROSS-SHARDS", "s", true);
+        final User second = onOtherShard(first, "TWICE-ACROSS-SHARDS");
+
+        final List<PersistResult> results = userRepository.persistAll(Arrays.asList(first, second), 10);
+        assertThat(results.get(0).getStatus(), is(PersistResult.Status.CREATED));
+        assertThat(results.get(1).getStatus(), is(PersistResult.Status.CONFLICT));
+    }
+
+    /**
+     * @return a new user with the given username, on another shard than the given user
+     */
+    private static User onOtherShard(final User user, final String username) {
+        while (true) {
+            final User other = new User(username, "s", true);
+            if(shardRouter.shardOf(other.getId()) != shardRouter.shardOf(user.getId())) {
+                return other;
+            }
+        }
+    }
+
+    private static List<String> usernames(final List<User> users) {
+        final List<String> result = new ArrayList<>();
+        for (User user : users) {
+            result.add(user.getUsername());
+        }
+        return result;
+    }
+
+    private static int count(final int shard, final String id) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(SHARD_URLS[shard], "sa", "");
+             PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM USER WHERE ID = ?")) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
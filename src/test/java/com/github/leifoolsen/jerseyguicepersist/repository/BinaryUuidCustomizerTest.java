@@ -0,0 +1,187 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.config.PersistenceUnitConfig;
+import com.github.leifoolsen.jerseyguicepersist.domain.IdGenerator;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserPatch;
+import com.github.leifoolsen.jerseyguicepersist.guice.GuiceModule;
+import com.github.leifoolsen.jerseyguicepersist.guice.PersistenceInitializer;
+import com.github.leifoolsen.jerseyguicepersist.guice.PersistenceModule;
+import com.google.gson.Gson;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.persist.UnitOfWork;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.validation.ConstraintViolationException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BinaryUuidCustomizerTest {
+
+    private static final String URL = "jdbc:h2:mem:binaryuuid;DB_CLOSE_DELAY=-1";
+    private static final String REPOSITORY_URL = "jdbc:h2:mem:binaryuuid-repository;DB_CLOSE_DELAY=-1";
+
+    private static EntityManagerFactory emf;
+    private static Injector injector;
+    private static UserRepository userRepository;
+    private static UnitOfWork unitOfWork;
+
+    @BeforeClass
+    public static void setUp() {
+        ApplicationConfigFactory.load();
+
+        final Properties properties = ApplicationConfigFactory.applicationConfig().persistenceUnitConfig().properties();
+        properties.setProperty(PersistenceUnitProperties.JDBC_URL, URL);
+        properties.setProperty(PersistenceUnitProperties.SESSION_NAME, "binary-uuid");
+        properties.setProperty(PersistenceUnitProperties.DESCRIPTOR_CUSTOMIZER_ + "User", BinaryUuidCustomizer.class.getName());
+        properties.remove("javax.persistence.sql-load-script-source");  // String ids
+
+        emf = Persistence.createEntityManagerFactory(
+                ApplicationConfigFactory.applicationConfig().persistenceUnitConfig().name(), properties);
+        UserQueries.register(emf);
+
+        final PersistenceUnitConfig config = new Gson().fromJson("{" +
+                "name: 'jpa-example'," +
+                "properties: [" +
+                "  'javax.persistence.jdbc.driver = org.h2.Driver'," +
+                "  'javax.persistence.jdbc.url = " + REPOSITORY_URL + "'," +
+                "  'javax.persistence.jdbc.user = sa'," +
+                "  'javax.persistence.jdbc.password ='," +
+                "  'javax.persistence.schema-generation.database.action = drop-and-create'," +
+                "  'eclipselink.session-name = binary-uuid-repository'," +
+                "  'eclipselink.descriptor.customizer.User = " + BinaryUuidCustomizer.class.getName() + "'," +
+                "  'eclipselink.logging.level = WARNING'" +
+                "]}", PersistenceUnitConfig.class);
+
+        injector = Guice.createInjector(new PersistenceModule(config, null), new GuiceModule());
+        userRepository = injector.getInstance(UserRepository.class);
+        unitOfWork = injector.getInstance(UnitOfWork.class);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        emf.close();
+        injector.getInstance(UserWriteBehindQueue.class).stop();
+        injector.getInstance(PersistenceInitializer.class).stop();
+    }
+
+    @Test
+    public void idShouldBeStoredAsBinary() throws Exception {
+        persist(new User("BINARY", "b", true));
+
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             ResultSet rs = connection.getMetaData().getColumns(null, null, "USER", "ID")) {
+            assertThat(rs.next(), is(true));
+            // H2 1.4 reports BINARY(16) as VARBINARY(16)
+            assertThat(rs.getInt("DATA_TYPE"), anyOf(equalTo(Types.BINARY), equalTo(Types.VARBINARY)));
+            assertThat(rs.getInt("COLUMN_SIZE"), equalTo(16));
+        }
+    }
+
+    @Test
+    public void stringIdsShouldRoundTrip() {
+        final User u1 = new User("ROUND-TRIP-1", "r", true);
+        final User u2 = new User("ROUND-TRIP-2", "r", true);
+        persist(u1);
+        persist(u2);
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            final User found = em.find(User.class, u1.getId());
+            assertThat(found, is(notNullValue()));
+            assertThat(found.getId(), equalTo(u1.getId()));
+
+            assertThat(UserQueries.FIND_VERSION_BY_ID.on(em).bind(UserQueries.ID, u2.getId()).list(), hasSize(1));
+
+            final List<User> users = UserQueries.FIND_BY_IDS.on(em)
+                    .bind(UserQueries.IDS, Arrays.asList(u1.getId(), u2.getId()))
+                    .list();
+            assertThat(users, hasSize(2));
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    @Test
+    public void repositoryShouldTreatIdThatIsNotUuidAsNotFound() {
+        unitOfWork.begin();
+        try {
+            final User user = new User("NOT-A-UUID-READ", "n", true);
+            userRepository.persist(user);
+
+            assertThat(userRepository.findById("not-a-uuid"), is(nullValue()));
+            assertThat(userRepository.findVersionById("not-a-uuid"), is(nullValue()));
+            assertThat(userRepository.update("not-a-uuid", 0, new UserPatch(false, null)), is(nullValue()));
+
+            final List<LookupResult> results = userRepository.findByIds(Arrays.asList("not-a-uuid", user.getId()));
+            assertThat(results.get(0).isFound(), is(false));
+            assertThat(results.get(1).isFound(), is(true));
+        }
+        finally {
+            unitOfWork.end();
+        }
+    }
+
+    @Test
+    public void repositoryShouldRejectIdThatIsNotUuid() {
+        final Gson gson = new Gson();
+        final User notUuid = gson.fromJson("{id: 'not-a-uuid', username: 'NOT-A-UUID-WRITE-1', active: true}", User.class);
+        final User uppercase = gson.fromJson("{id: '" + IdGenerator.nextId().toUpperCase() +
+                "', username: 'NOT-A-UUID-WRITE-2', active: true}", User.class);
+
+        unitOfWork.begin();
+        try {
+            try {
+                userRepository.persist(notUuid);
+                fail("Expected ConstraintViolationException");
+            }
+            catch (ConstraintViolationException expected) {
+                // ok
+            }
+
+            final List<PersistResult> results = userRepository.persistAll(
+                    Arrays.asList(notUuid, uppercase, new User("NOT-A-UUID-WRITE-3", "n", true)), 10);
+            assertThat(results.get(0).getStatus(), is(PersistResult.Status.INVALID));
+            assertThat(results.get(1).getStatus(), is(PersistResult.Status.INVALID));
+            assertThat(results.get(2).getStatus(), is(PersistResult.Status.CREATED));
+        }
+        finally {
+            unitOfWork.end();
+        }
+    }
+
+    private static void persist(final User user) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(user);
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+    }
+}
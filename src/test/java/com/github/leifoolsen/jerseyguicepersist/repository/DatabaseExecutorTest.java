@@ -0,0 +1,107 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.github.leifoolsen.jerseyguicepersist.config.RepositoryConfig;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.Gson;
+import com.google.inject.persist.UnitOfWork;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DatabaseExecutorTest {
+
+    private final ThreadLocal<Boolean> inUnitOfWork = new ThreadLocal<>();
+
+    private final UnitOfWork unitOfWork = new UnitOfWork() {
+        @Override
+        public void begin() { inUnitOfWork.set(true); }
+
+        @Override
+        public void end() { inUnitOfWork.remove(); }
+    };
+
+    private DatabaseExecutor executor;
+
+    @After
+    public void tearDown() {
+        executor.stop();
+    }
+
+    @Test
+    public void workShouldRunInUnitOfWorkOnExecutorThread() throws Exception {
+        executor = new DatabaseExecutor(unitOfWork, config("{threads: 1, queueCapacity: 1}"));
+
+        final String caller = Thread.currentThread().getName();
+        final ListenableFuture<String> thread = executor.submit(() -> {
+            assertThat(inUnitOfWork.get(), is(true));
+            return Thread.currentThread().getName();
+        });
+        assertThat(thread.get(5, TimeUnit.SECONDS), not(equalTo(caller)));
+        assertThat(inUnitOfWork.get(), is((Boolean) null));
+    }
+
+    @Test
+    public void shouldRejectWorkWhenQueueIsFull() throws Exception {
+        executor = new DatabaseExecutor(unitOfWork, config("{threads: 1, queueCapacity: 1}"));
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        running.await(5, TimeUnit.SECONDS);
+        final ListenableFuture<Boolean> queued = executor.submit(() -> true);
+
+        try {
+            executor.submit(() -> true);
+            fail("Expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException expected) {
+            // Thread busy, queue full
+        }
+        release.countDown();
+        assertThat(queued.get(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void cancelledWorkShouldBeRemovedFromQueue() throws Exception {
+        executor = new DatabaseExecutor(unitOfWork, config("{threads: 1, queueCapacity: 1}"));
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        running.await(5, TimeUnit.SECONDS);
+        assertThat(executor.submit(() -> true).cancel(false), is(true));
+
+        // The cancelled work no longer holds the only queue slot
+        final ListenableFuture<Boolean> queued = executor.submit(() -> true);
+        release.countDown();
+        assertThat(queued.get(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void disabledExecutorShouldRunWorkOnCallingThread() throws Exception {
+        executor = new DatabaseExecutor(unitOfWork, config("{enabled: false}"));
+
+        final String caller = Thread.currentThread().getName();
+        assertThat(executor.submit(() -> Thread.currentThread().getName()).get(), equalTo(caller));
+        assertThat(inUnitOfWork.get(), is((Boolean) null));
+    }
+
+    private static RepositoryConfig.DatabaseExecutorConfig config(final String json) {
+        return new Gson().fromJson(json, RepositoryConfig.DatabaseExecutorConfig.class);
+    }
+}
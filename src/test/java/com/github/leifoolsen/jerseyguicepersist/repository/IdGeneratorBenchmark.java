@@ -0,0 +1,125 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.domain.IdGenerator;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares id generators: the cost of generating ids from several threads, and insert throughput
+ * against H2 for random and time ordered ids, stored as VARCHAR(36) and as BINARY(16),
+ * see {@link BinaryUuidCustomizer}.
+ *
+ * Remove the {@code @Ignore} to run.
+ */
+public class IdGeneratorBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(IdGeneratorBenchmark.class);
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 1000000;
+    private static final int USERS = 200000;
+    private static final int USERS_PER_COMMIT = 1000;
+
+    @Test
+    @Ignore  // Benchmark, run manually
+    public void compareGenerators() throws Exception {
+        for (int run = 0; run < 2; run++) {  // First run is warmup
+            for (IdGenerator generator : IdGenerator.values()) {
+                final long nanos = generate(generator);
+                logger.info("{}: {} threads, {} ns wall time per id and thread", generator, THREADS, nanos / IDS_PER_THREAD);
+            }
+        }
+    }
+
+    @Test
+    @Ignore  // Benchmark, run manually
+    public void compareInsertThroughput() {
+        ApplicationConfigFactory.load();
+        try {
+            for (int run = 0; run < 2; run++) {  // First run is warmup
+                for (boolean binary : new boolean[] {false, true}) {
+                    for (IdGenerator generator : IdGenerator.values()) {
+                        IdGenerator.use(generator);
+                        final long nanos = insert(binary, generator, run);
+                        logger.info("{} {}: {} users/s", generator, binary ? "BINARY(16)" : "VARCHAR(36)",
+                                USERS * TimeUnit.SECONDS.toNanos(1) / nanos);
+                    }
+                }
+            }
+        }
+        finally {
+            IdGenerator.use(IdGenerator.RANDOM);
+        }
+    }
+
+    private static long generate(final IdGenerator generator) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            final long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    long sink = 0;
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        sink += generator.generate().getLeastSignificantBits();
+                    }
+                    return sink;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            return System.nanoTime() - start;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long insert(final boolean binary, final IdGenerator generator, final int run) {
+        final String name = "idbench-" + generator.name().toLowerCase() + (binary ? "-binary-" : "-") + run;
+
+        final Properties properties = ApplicationConfigFactory.applicationConfig().persistenceUnitConfig().properties();
+        properties.setProperty(PersistenceUnitProperties.JDBC_URL, "jdbc:h2:mem:" + name);
+        properties.setProperty(PersistenceUnitProperties.SESSION_NAME, name);
+        properties.remove("javax.persistence.sql-load-script-source");
+        if(binary) {
+            properties.setProperty(PersistenceUnitProperties.DESCRIPTOR_CUSTOMIZER_ + "User", BinaryUuidCustomizer.class.getName());
+        }
+
+        final EntityManagerFactory emf = Persistence.createEntityManagerFactory(
+                ApplicationConfigFactory.applicationConfig().persistenceUnitConfig().name(), properties);
+        final EntityManager em = emf.createEntityManager();
+        try {
+            final long start = System.nanoTime();
+            for (int i = 0; i < USERS; i += USERS_PER_COMMIT) {
+                em.getTransaction().begin();
+                for (int j = i; j < i + USERS_PER_COMMIT; j++) {
+                    em.persist(new User("user-" + j, "p", true));
+                }
+                em.getTransaction().commit();
+                em.clear();
+            }
+            return System.nanoTime() - start;
+        }
+        finally {
+            em.close();
+            emf.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class UserCacheTest {
+
+    private UserCache userCache;
+
+    @BeforeClass
+    public static void setUp() {
+        ApplicationConfigFactory.load();
+    }
+
+    @Before
+    public void before() {
+        userCache = new UserCache(ApplicationConfigFactory.applicationConfig().repositoryConfig());
+    }
+
+    @Test
+    public void shouldReturnCachedUser() {
+        User u = user("id-1", 0);
+        userCache.put(u, userCache.stamp("id-1"));
+
+        assertThat(userCache.get("id-1"), is(notNullValue()));
+        assertThat(userCache.stats().hitCount(), is(1L));
+    }
+
+    @Test
+    public void shouldNotReplaceNewerVersion() {
+        userCache.put(user("id-2", 2), userCache.stamp("id-2"));
+        userCache.put(user("id-2", 1), userCache.stamp("id-2"));
+
+        assertThat(userCache.get("id-2").getVersion(), is(2L));
+
+        userCache.put(user("id-2", 3), userCache.stamp("id-2"));
+        assertThat(userCache.get("id-2").getVersion(), is(3L));
+    }
+
+    @Test
+    public void shouldNotCacheLoadThatRacedWithInvalidation() {
+        final long stamp = userCache.stamp("id-3");
+        userCache.invalidate("id-3");
+        userCache.put(user("id-3", 0), stamp);
+
+        assertThat(userCache.get("id-3"), is(nullValue()));
+    }
+
+    @Test
+    public void invalidationShouldNotDiscardLoadOfAnotherUser() {
+        final long stamp = userCache.stamp("id-4");
+        userCache.invalidate("id-5");
+        userCache.put(user("id-4", 0), stamp);
+
+        assertThat(userCache.get("id-4"), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldCacheAndReturnCopies() {
+        final User u = user("id-6", 0);
+        userCache.put(u, userCache.stamp("id-6"));
+
+        final User cached = userCache.get("id-6");
+        assertThat(cached, is(not(sameInstance(u))));
+        assertThat(userCache.get("id-6"), is(not(sameInstance(cached))));
+        assertThat(cached.getUsername(), is(u.getUsername()));
+    }
+
+    private static User user(final String id, final long version) {
+        return new Gson().fromJson(
+                "{\"id\":\"" + id + "\", \"version\":" + version + ", \"username\":\"U" + id + "\"}", User.class);
+    }
+}
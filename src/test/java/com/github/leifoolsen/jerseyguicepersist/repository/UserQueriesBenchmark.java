@@ -0,0 +1,87 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.TypedQuery;
+import java.util.Properties;
+
+/**
+ * Compares the per-call cost of {@code createQuery} with a JPQL string and {@code createNamedQuery}
+ * for a query registered by {@link UserQueries}. Measures creating and binding the query, and
+ * creating, binding and executing it against the sample data.
+ *
+ * Remove the {@code @Ignore} to run.
+ */
+public class UserQueriesBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(UserQueriesBenchmark.class);
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+
+    @Test
+    @Ignore  // Benchmark, run manually
+    public void compareAdHocWithNamedQuery() {
+        ApplicationConfigFactory.load();
+
+        final Properties properties = ApplicationConfigFactory.applicationConfig().persistenceUnitConfig().properties();
+        properties.setProperty("javax.persistence.jdbc.url", "jdbc:h2:mem:querybench");
+
+        final EntityManagerFactory emf = Persistence.createEntityManagerFactory(
+                ApplicationConfigFactory.applicationConfig().persistenceUnitConfig().name(), properties);
+        try {
+            UserQueries.register(emf);
+            final EntityManager em = emf.createEntityManager();
+            try {
+                for (boolean execute : new boolean[] {false, true}) {
+                    adHoc(em, WARMUP, execute);
+                    named(em, WARMUP, execute);
+
+                    final long adHoc = adHoc(em, ITERATIONS, execute);
+                    final long named = named(em, ITERATIONS, execute);
+                    logger.info("{}: createQuery {} ns/call, createNamedQuery {} ns/call",
+                            execute ? "Create, bind and execute" : "Create and bind",
+                            adHoc / ITERATIONS, named / ITERATIONS);
+                }
+            }
+            finally {
+                em.close();
+            }
+        }
+        finally {
+            emf.close();
+        }
+    }
+
+    private static long adHoc(final EntityManager em, final int iterations, final boolean execute) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            final TypedQuery<User> q = em
+                    .createQuery("select u from User u where u.username like :username", User.class)
+                    .setParameter("username", "S%");
+            if(execute) {
+                q.getResultList();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long named(final EntityManager em, final int iterations, final boolean execute) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            final NamedQueryDefinition.Execution<User> q = UserQueries.FIND_BY_NAME.on(em)
+                    .bind(UserQueries.USERNAME, "S%");
+            if(execute) {
+                q.list();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
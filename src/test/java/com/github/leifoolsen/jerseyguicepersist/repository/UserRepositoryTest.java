@@ -1,15 +1,19 @@
 package com.github.leifoolsen.jerseyguicepersist.repository;
 
 
+import com.codahale.metrics.Timer;
 import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfig;
 import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
 import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserPatch;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserSummary;
 import com.github.leifoolsen.jerseyguicepersist.guice.GuiceModule;
+import com.github.leifoolsen.jerseyguicepersist.guice.PersistenceInitializer;
 import com.github.leifoolsen.jerseyguicepersist.guice.PersistenceModule;
+import com.github.leifoolsen.jerseyguicepersist.metrics.Metrics;
 import com.github.leifoolsen.jerseyguicepersist.sampledata.SampleDomain;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
-import com.google.inject.persist.PersistService;
 import com.google.inject.persist.UnitOfWork;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -19,15 +23,22 @@ import org.junit.Test;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
+import javax.persistence.EntityExistsException;
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class UserRepositoryTest {
 
@@ -55,8 +66,8 @@ public class UserRepositoryTest {
 
     @AfterClass
     public static void tearDown() {
-        PersistService service = injector.getInstance(PersistService.class);
-        service.stop();
+        injector.getInstance(UserWriteBehindQueue.class).stop();
+        injector.getInstance(PersistenceInitializer.class).stop();
     }
 
     @Before
@@ -80,18 +91,200 @@ public class UserRepositoryTest {
         assertThat(userRepository.findById(user.getId()), is(notNullValue()));
     }
 
+    @Test
+    public void committedInsertShouldBeAddedToUsernameIndex() {
+        userRepository.persist(new User("INDEXED-ON-COMMIT", "i", true));
+        assertThat(injector.getInstance(UsernameIndex.class).findByPrefix("INDEXED-ON-COMMIT", 10),
+                contains("INDEXED-ON-COMMIT"));
+    }
+
+    @Test
+    public void findByIdsShouldReturnResultsInRequestOrder() {
+        List<User> users = userRepository.findPageByName(null, null, null, 3);
+        assertThat(users, hasSize(3));
+
+        // Three ids and a miss span two chunks; the repeated id is looked up once
+        List<LookupResult> results = userRepository.findByIds(Arrays.asList(
+                users.get(2).getId(), "no-such-id", users.get(0).getId(), users.get(1).getId(), users.get(2).getId()));
+
+        assertThat(results, hasSize(5));
+        assertThat(results.get(0).getUser().getUsername(), equalTo(users.get(2).getUsername()));
+        assertThat(results.get(1).getId(), equalTo("no-such-id"));
+        assertThat(results.get(1).isFound(), is(false));
+        assertThat(results.get(1).getUser(), is(nullValue()));
+        assertThat(results.get(2).getUser().getUsername(), equalTo(users.get(0).getUsername()));
+        assertThat(results.get(3).getUser().getUsername(), equalTo(users.get(1).getUsername()));
+        assertThat(results.get(4).isFound(), is(true));
+    }
+
+    @Test
+    public void findVersionByIdShouldMatchEntityVersion() {
+        User user = userRepository.findByName(SampleDomain.SCOTT).get(0);
+        assertThat(userRepository.findVersionById(user.getId()), equalTo(user.getVersion()));
+        assertThat(userRepository.findVersionById("no-such-id"), is(nullValue()));
+    }
+
+    @Test
+    public void updateShouldOnlyApplyToExpectedVersion() {
+        User user = new User("VERSIONED", "v", true);
+        userRepository.persist(user);
+        final long version = userRepository.findVersionById(user.getId());
+
+        assertThat(userRepository.update(user.getId(), version, new UserPatch(false, null)), equalTo(version + 1));
+        assertThat(userRepository.update(user.getId(), version, new UserPatch(true, null)), is(nullValue()));
+        assertThat(userRepository.findVersionById(user.getId()), equalTo(version + 1));
+    }
+
     @Test
     public void findUserByName() {
         List<User> users = userRepository.findByName(SampleDomain.SCOTT);
         assertThat(users, hasSize(greaterThan(0)));
     }
 
+    @Test
+    public void namedQueryExecutionsShouldBeCounted() {
+        Timer timer = Metrics.registry().timer("repository.query." + UserQueries.FIND_BY_NAME.name());
+        long count = timer.getCount();
+
+        userRepository.findByName(SampleDomain.SCOTT);
+        assertThat(timer.getCount(), is(count + 1));
+    }
+
     @Test
     public void findAllUsersByName() {
         List<User> users = userRepository.findByName(null);
         assertThat(users, hasSize(greaterThan(2)));
     }
 
+    @Test
+    public void findPageByNameShouldSeekPastLastKey() {
+        List<User> first = userRepository.findPageByName(null, null, null, 2);
+        assertThat(first, hasSize(2));
+
+        User last = first.get(1);
+        List<User> second = userRepository.findPageByName(null, last.getUsername(), last.getId(), 2);
+        assertThat(second, hasSize(greaterThan(0)));
+        assertThat(second.get(0).getUsername().compareTo(last.getUsername()), greaterThan(0));
+    }
+
+    @Test
+    public void summaryPageShouldMatchEntityPage() {
+        List<User> users = userRepository.findPageByName(null, null, null, 3);
+        List<UserSummary> summaries = userRepository.findSummaryPageByName(null, null, null, 3);
+        assertThat(summaries, hasSize(users.size()));
+        for (int i = 0; i < users.size(); i++) {
+            assertThat(summaries.get(i).getId(), equalTo(users.get(i).getId()));
+            assertThat(summaries.get(i).getUsername(), equalTo(users.get(i).getUsername()));
+            assertThat(summaries.get(i).isActive(), equalTo(users.get(i).isActive()));
+        }
+
+        UserSummary last = summaries.get(summaries.size() - 1);
+        List<UserSummary> next = userRepository.findSummaryPageByName(null, last.getUsername(), last.getId(), 3);
+        assertThat(next, hasSize(greaterThan(0)));
+        assertThat(next.get(0).getUsername().compareTo(last.getUsername()), greaterThan(0));
+    }
+
+    @Test
+    public void forEachByNameShouldStreamAllMatchingUsers() {
+        final List<User> streamed = new ArrayList<>();
+        userRepository.forEachByName(null, 2, streamed::add);
+        assertThat(streamed, hasSize(userRepository.findByName(null).size()));
+    }
+
+    @Test
+    public void persistAllShouldCommitInChunksAndReportEachUser() {
+        final List<User> users = Arrays.asList(
+                new User("CHUNK-1", "c1", true),
+                new User("CHUNK-2", "c2", true),
+                new User("CHUNK-2", "duplicate", true),
+                new User("CHUNK-3", "c3", true),
+                new User(null, "invalid", true));
+
+        List<PersistResult> results = userRepository.persistAll(users, 2);
+
+        assertThat(results, hasSize(users.size()));
+        assertThat(results.get(0).getStatus(), is(PersistResult.Status.CREATED));
+        assertThat(results.get(1).getStatus(), is(PersistResult.Status.CREATED));
+        assertThat(results.get(2).getStatus(), is(PersistResult.Status.CONFLICT));
+        assertThat(results.get(3).getStatus(), is(PersistResult.Status.CREATED));
+        assertThat(results.get(4).getStatus(), is(PersistResult.Status.INVALID));
+        assertThat(results.get(4).getIndex(), is(4));
+        assertThat(userRepository.findById(users.get(3).getId()), is(notNullValue()));
+    }
+
+    @Test
+    public void committedUsernameShouldBeFoundByPrefix() {
+        userRepository.persist(new User("PREFIX-1", "p1", true));
+        userRepository.persist(new User("PREFIX-2", "p2", true));
+
+        assertThat(userRepository.findUsernamesByPrefix("PREFIX-", 10), contains("PREFIX-1", "PREFIX-2"));
+        assertThat(userRepository.findUsernamesByPrefix("PREFIX-", 1), contains("PREFIX-1"));
+    }
+
+    @Test
+    public void prefixPageShouldBeServedFromUsernameIndex() {
+        userRepository.persist(new User("PAGED-1", "p1", true));
+        userRepository.persist(new User("PAGED-2", "p2", true));
+        userRepository.persist(new User("PAGED-3", "p3", true));
+
+        final List<User> first = userRepository.findPageByName("PAGED-%", null, null, 2);
+        assertThat(usernames(first), contains("PAGED-1", "PAGED-2"));
+
+        final User last = first.get(1);
+        assertThat(usernames(userRepository.findPageByName("PAGED-%", last.getUsername(), last.getId(), 2)),
+                contains("PAGED-3"));
+
+        // Not a plain prefix, matched with LIKE in the database
+        assertThat(usernames(userRepository.findPageByName("PAGED-_", null, null, 10)),
+                contains("PAGED-1", "PAGED-2", "PAGED-3"));
+    }
+
+    @Test
+    public void rolledBackUsernameShouldNotBeFoundByPrefix() {
+        EntityManager em = emProvider.get();
+        em.getTransaction().begin();
+        userRepository.persist(new User("ROLLBACK-1", "r1", true));
+        em.getTransaction().rollback();
+
+        assertThat(userRepository.findUsernamesByPrefix("ROLLBACK-", 10), is(empty()));
+    }
+
+    @Test
+    public void replaceShouldUpdateUsernameIndexOnlyAfterCommit() {
+        final User user = new User("RENAME-1", "r1", true);
+        userRepository.persist(user);
+        userRepository.persist(new User("RENAME-TAKEN", "rt", true));
+        final long version = userRepository.findVersionById(user.getId());
+
+        // Username taken, the replace is rolled back and neither the index nor the cache changes
+        try {
+            userRepository.replace(user.getId(), version, new User("RENAME-TAKEN", "r1", true));
+            fail("Expected EntityExistsException");
+        }
+        catch (EntityExistsException expected) {
+            // ok
+        }
+        assertThat(userRepository.findUsernamesByPrefix("RENAME-", 10), contains("RENAME-1", "RENAME-TAKEN"));
+
+        assertThat(userRepository.findById(user.getId()).getUsername(), equalTo("RENAME-1"));
+        assertThat(userRepository.replace(user.getId(), version, new User("RENAME-2", "r1", true)), equalTo(version + 1));
+        assertThat(userRepository.findUsernamesByPrefix("RENAME-", 10), contains("RENAME-2", "RENAME-TAKEN"));
+        assertThat(userRepository.findById(user.getId()).getUsername(), equalTo("RENAME-2"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void updateShouldNotJoinActiveTransaction() {
+        final User user = userRepository.findByName(SampleDomain.SCOTT).get(0);
+        final EntityManager em = emProvider.get();
+        em.getTransaction().begin();
+        try {
+            userRepository.update(user.getId(), user.getVersion(), new UserPatch(true, null));
+        }
+        finally {
+            em.getTransaction().rollback();
+        }
+    }
+
     @Test
     public void testNestedTransactions() {
         EntityManager em = emProvider.get();
@@ -113,4 +306,11 @@ public class UserRepositoryTest {
         assertThat(userRepository.findById(u2.getId()), is(nullValue()));
     }
 
+    private static List<String> usernames(final List<User> users) {
+        final List<String> usernames = new ArrayList<>();
+        for (User user : users) {
+            usernames.add(user.getUsername());
+        }
+        return usernames;
+    }
 }
@@ -0,0 +1,124 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.github.leifoolsen.jerseyguicepersist.config.RepositoryConfig;
+import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.google.gson.Gson;
+import com.google.inject.persist.UnitOfWork;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.persistence.PersistenceException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UserWriteBehindQueueTest {
+
+    private static final Gson GSON = new Gson();
+
+    private final UnitOfWork unitOfWork = new UnitOfWork() {
+        @Override
+        public void begin() {}
+
+        @Override
+        public void end() {}
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UserWriteBehindQueue queue;
+
+    @After
+    public void tearDown() {
+        queue.stop();
+    }
+
+    @Test
+    public void failedReplayShouldBeRetriedByWriter() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("journal");
+        final User user = new User("REPLAYED", "r", true);
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, 4096, false)) {
+            journal.append(GSON.toJson(user).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // The first write fails; the queue is still created and the user is written on a retry
+        queue = new UserWriteBehindQueue(new StubRepository(1), unitOfWork, config(), file);
+        assertThat(awaitOutcome(user.getId()), equalTo(PersistResult.Status.CREATED));
+    }
+
+    @Test
+    public void userFailingEveryAttemptShouldBeMarkedFailed() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("journal");
+        queue = new UserWriteBehindQueue(new StubRepository(0), unitOfWork, config(), file);
+
+        final User before = new User("BEFORE-POISON", "b", true);
+        final User poison = new User("POISON", "p", true);
+        final User after = new User("AFTER-POISON", "a", true);
+        assertThat(queue.submit(before), is(true));
+        assertThat(queue.submit(poison), is(true));
+        assertThat(queue.submit(after), is(true));
+
+        assertThat(awaitOutcome(poison.getId()), equalTo(PersistResult.Status.FAILED));
+        assertThat(awaitOutcome(before.getId()), equalTo(PersistResult.Status.CREATED));
+        assertThat(awaitOutcome(after.getId()), equalTo(PersistResult.Status.CREATED));
+
+        // Checkpointed past the failed user, so it is not replayed
+        queue.stop();
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, 4096, false)) {
+            assertThat(journal.pending(), is(empty()));
+        }
+    }
+
+    private PersistResult.Status awaitOutcome(final String id) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        PersistResult.Status status = queue.status(id).getStatus();
+        while (status == PersistResult.Status.QUEUED && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            status = queue.status(id).getStatus();
+        }
+        return status;
+    }
+
+    private static RepositoryConfig.WriteBehindConfig config() {
+        return GSON.fromJson("{enabled: true, maxBatchDelay: 50}", RepositoryConfig.WriteBehindConfig.class);
+    }
+
+    /**
+     * Fails the first {@code failures} writes, and every write of a user named POISON
+     */
+    private static class StubRepository extends UserRepository {
+        private final AtomicInteger failures;
+
+        StubRepository(final int failures) {
+            super(null, null, null, null, null);
+            this.failures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public List<PersistResult> persistAll(final Iterable<User> users, final int chunkSize) {
+            if(failures.getAndDecrement() > 0) {
+                throw new PersistenceException("Database unavailable");
+            }
+            final List<PersistResult> results = new ArrayList<>();
+            for (User user : users) {
+                if("POISON".equals(user.getUsername())) {
+                    throw new PersistenceException("Poison user");
+                }
+                results.add(new PersistResult(
+                        results.size(), user.getId(), user.getUsername(), PersistResult.Status.CREATED, null));
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares prefix lookups answered by {@link UsernameIndex} with the same lookups answered by the database.
+ * Table sizes are given by the system property {@code usernameIndexBenchmark.sizes}, e.g.
+ * <pre>
+ *   mvn test -Dtest=UsernameIndexBenchmark -DusernameIndexBenchmark.sizes=10000,1000000,10000000
+ * </pre>
+ * Remove the {@code @Ignore} to run. 10M users needs a few GB of heap.
+ */
+public class UsernameIndexBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(UsernameIndexBenchmark.class);
+
+    private static final int LOOKUPS = 10000;
+    private static final int LIMIT = 10;
+    private static final int JDBC_BATCH_SIZE = 10000;
+
+    @Test
+    @Ignore  // Benchmark, run manually
+    public void compareIndexWithDatabase() throws Exception {
+        ApplicationConfigFactory.load();
+
+        final String sizes = System.getProperty("usernameIndexBenchmark.sizes", "10000,1000000");
+        for (String size : Splitter.on(',').trimResults().omitEmptyStrings().split(sizes)) {
+            run(Integer.parseInt(size));
+        }
+    }
+
+    private void run(final int size) throws Exception {
+        final String url = "jdbc:h2:mem:usernamebench" + size;
+        final Properties properties = ApplicationConfigFactory.applicationConfig().persistenceUnitConfig().properties();
+        properties.setProperty("javax.persistence.jdbc.url", url);
+        properties.remove("javax.persistence.sql-load-script-source");
+
+        final EntityManagerFactory emf = Persistence.createEntityManagerFactory(
+                ApplicationConfigFactory.applicationConfig().persistenceUnitConfig().name(), properties);
+        try {
+            emf.createEntityManager().close(); // Deploys the PU, creates the schema
+
+            insertUsers(url, size);
+
+            final Stopwatch loadTime = Stopwatch.createStarted();
+            final UsernameIndex index = new UsernameIndex(true, emf);
+            logger.info("{} users: index loaded in {}", size, loadTime);
+            assertThat(index.size(), is(size));
+
+            final String[] prefixes = prefixes(size);
+
+            final Stopwatch indexTime = Stopwatch.createStarted();
+            for (String prefix : prefixes) {
+                index.findByPrefix(prefix, LIMIT);
+            }
+            indexTime.stop();
+
+            final EntityManager em = emf.createEntityManager();
+            final Stopwatch dbTime = Stopwatch.createStarted();
+            try {
+                for (String prefix : prefixes) {
+                    final List<String> result = em
+                            .createQuery("select u.username from User u where u.username like :prefix " +
+                                    "order by u.username", String.class)
+                            .setParameter("prefix", prefix + "%")
+                            .setMaxResults(LIMIT)
+                            .getResultList();
+                    assertThat(result.isEmpty(), is(false));
+                }
+            }
+            finally {
+                em.close();
+            }
+            dbTime.stop();
+
+            logger.info("{} users, {} lookups: index {} us/lookup, database {} us/lookup",
+                    size, LOOKUPS,
+                    indexTime.elapsed(TimeUnit.MICROSECONDS) / LOOKUPS,
+                    dbTime.elapsed(TimeUnit.MICROSECONDS) / LOOKUPS);
+        }
+        finally {
+            emf.close();
+        }
+    }
+
+    private static void insertUsers(final String url, final int size) throws Exception {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO USER (ID, ACTIVE, USERNAME, PASSWORD, VERSION) VALUES (?, true, ?, 'secret', 0)")) {
+
+                for (int i = 0; i < size; i++) {
+                    ps.setString(1, UUID.randomUUID().toString());
+                    ps.setString(2, username(i));
+                    ps.addBatch();
+                    if((i + 1) % JDBC_BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                        connection.commit();
+                    }
+                }
+                ps.executeBatch();
+                connection.commit();
+            }
+        }
+        logger.info("{} users inserted in {}", size, stopwatch);
+    }
+
+    private static String[] prefixes(final int size) {
+        final Random random = new Random(42);
+        final String[] result = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            final String username = username(random.nextInt(size));
+            result[i] = username.substring(0, username.length() - 2);
+        }
+        return result;
+    }
+
+    private static String username(final int i) {
+        return String.format("user-%08d", i);
+    }
+}
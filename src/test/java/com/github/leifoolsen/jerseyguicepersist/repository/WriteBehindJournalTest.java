@@ -0,0 +1,124 @@
+package com.github.leifoolsen.jerseyguicepersist.repository;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class WriteBehindJournalTest {
+
+    private static final int SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pendingRecordsShouldBeReplayedAfterReopen() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("journal");
+
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, SIZE, false)) {
+            final long first = journal.append(bytes("one"));
+            journal.append(bytes("two"));
+            journal.append(bytes("three"));
+            journal.checkpoint(first);
+        }
+
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, SIZE, false)) {
+            assertThat(journal.pending(), hasSize(2));
+            assertThat(string(journal.pending().get(0)), equalTo("two"));
+            assertThat(string(journal.pending().get(1)), equalTo("three"));
+            journal.checkpointAll();
+        }
+
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, SIZE, false)) {
+            assertThat(journal.pending(), is(empty()));
+            assertThat(journal.usedBytes(), is(0));
+        }
+    }
+
+    @Test
+    public void tornRecordShouldNotBeReplayed() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("journal");
+
+        final long end;
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, SIZE, false)) {
+            journal.append(bytes("complete"));
+            end = journal.append(bytes("torn"));
+        }
+
+        // Corrupt the last byte of the second record
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(end - 1);
+            raf.write('X');
+        }
+
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, SIZE, false)) {
+            assertThat(journal.pending(), hasSize(1));
+            assertThat(string(journal.pending().get(0)), equalTo("complete"));
+        }
+    }
+
+    @Test
+    public void fullJournalShouldHaveNoRoom() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("journal");
+
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, SIZE, false)) {
+            final byte[] record = new byte[1000];
+            int appended = 0;
+            while (journal.hasRoomFor(record.length)) {
+                journal.append(record);
+                appended++;
+            }
+            assertThat(appended, is(4));
+
+            journal.checkpointAll();
+            assertThat(journal.hasRoomFor(record.length), is(true));
+        }
+    }
+
+    @Test
+    public void journalThatNeverDrainsShouldBeCompacted() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("journal");
+
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, SIZE, false)) {
+            // Two records are always pending; a checkpoint never reaches the write position
+            final Deque<Long> positions = new ArrayDeque<>();
+            positions.add(journal.append(bytes("record-0")));
+            positions.add(journal.append(bytes("record-1")));
+
+            for (int i = 2; i < 10 * SIZE; i++) {
+                final byte[] record = bytes("record-" + i);
+                assertThat("No room after " + i + " records", journal.hasRoomFor(record.length), is(true));
+                positions.add(journal.append(record));
+                journal.checkpoint(positions.remove());
+            }
+            assertThat(journal.usedBytes(), lessThan(SIZE / 2));
+        }
+
+        try (WriteBehindJournal journal = new WriteBehindJournal(file, SIZE, false)) {
+            assertThat(journal.pending(), hasSize(2));
+            assertThat(string(journal.pending().get(0)), equalTo("record-" + (10 * SIZE - 2)));
+            assertThat(string(journal.pending().get(1)), equalTo("record-" + (10 * SIZE - 1)));
+        }
+    }
+
+    private static byte[] bytes(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(final byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -3,11 +3,25 @@ package com.github.leifoolsen.jerseyguicepersist.rest.api;
 import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfig;
 import com.github.leifoolsen.jerseyguicepersist.config.ApplicationConfigFactory;
 import com.github.leifoolsen.jerseyguicepersist.domain.User;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserPatch;
+import com.github.leifoolsen.jerseyguicepersist.domain.UserSummary;
+import com.github.leifoolsen.jerseyguicepersist.embeddedjetty.H2cClient;
 import com.github.leifoolsen.jerseyguicepersist.embeddedjetty.JettyFactory;
+import com.github.leifoolsen.jerseyguicepersist.repository.LookupResult;
+import com.github.leifoolsen.jerseyguicepersist.repository.PersistResult;
 import com.github.leifoolsen.jerseyguicepersist.rest.application.ApplicationModel;
+import com.github.leifoolsen.jerseyguicepersist.rest.filter.RateLimitFilter;
 import com.github.leifoolsen.jerseyguicepersist.rest.interceptor.GZIPReaderInterceptor;
 import com.github.leifoolsen.jerseyguicepersist.sampledata.SampleDomain;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Ordering;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -16,19 +30,41 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.Variant;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 
@@ -78,6 +114,49 @@ public class UserResourceTest {
         assertThat(response.getStatus(), equalTo(Response.Status.NO_CONTENT.getStatusCode()));
     }
 
+    @Test
+    public void asyncCreateShouldBeQueuedAndWritten() throws Exception {
+        User user = new User("QUEUED-1", "q", true);
+        final Response response = target.path(UserResource.RESOURCE_PATH)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header(UserResource.PREFER, UserResource.RESPOND_ASYNC)
+                .post(Entity.entity(user, MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.ACCEPTED.getStatusCode()));
+        assertThat(response.getHeaderString(UserResource.PREFERENCE_APPLIED), equalTo(UserResource.RESPOND_ASYNC));
+        assertThat(response.getLocation().getPath(), endsWith("/queue/" + user.getId()));
+
+        final WebTarget status = ClientBuilder.newClient().target(response.getLocation());
+        PersistResult result = null;
+        for (int i = 0; i < 50; i++) {
+            result = status
+                    .request(MediaType.APPLICATION_JSON_TYPE)
+                    .get(PersistResult.class);
+            if(result.getStatus() != PersistResult.Status.QUEUED) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        assertThat(result.getStatus(), equalTo(PersistResult.Status.CREATED));
+
+        final Response created = target.path(UserResource.RESOURCE_PATH)
+                .path(user.getId())
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+        assertThat(created.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+    }
+
+    @Test
+    public void unknownQueuedCreateShouldReturn404() {
+        final Response response = target.path(UserResource.RESOURCE_PATH)
+                .path("queue")
+                .path("no-such-id")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.NOT_FOUND.getStatusCode()));
+    }
+
     @Test
     public void shouldFindUserByGivenId() {
         String id = SampleDomain.users().get(SampleDomain.ALICE).getId();
@@ -95,6 +174,195 @@ public class UserResourceTest {
         assertThat(u.getId(), equalTo(id));
     }
 
+    @Test
+    public void multiGetShouldReturnUsersInRequestOrder() {
+        String alice = SampleDomain.users().get(SampleDomain.ALICE).getId();
+        String scott = "5c0f7d16-bb78-4832-95df-72e434251e10";  // Prepopulated via import.sql
+
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .queryParam("id", scott, "no-such-id", alice)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        List<LookupResult> results = response.readEntity(new GenericType<List<LookupResult>>() {});
+        assertThat(results, hasSize(3));
+        assertThat(results.get(0).getUser().getUsername(), equalTo(SampleDomain.SCOTT));
+        assertThat(results.get(1).isFound(), is(false));
+        assertThat(results.get(2).getUser().getId(), equalTo(alice));
+    }
+
+    @Test
+    public void lookupShouldAcceptJsonArrayOfIds() {
+        String alice = SampleDomain.users().get(SampleDomain.ALICE).getId();
+
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("lookup")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(new Gson().toJson(Arrays.asList("no-such-id", alice)), MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        List<LookupResult> results = response.readEntity(new GenericType<List<LookupResult>>() {});
+        assertThat(results, hasSize(2));
+        assertThat(results.get(0).isFound(), is(false));
+        assertThat(results.get(1).getUser().getUsername(), equalTo(SampleDomain.ALICE));
+    }
+
+    @Test
+    public void lookupOfTooManyIdsShouldBeBadRequest() {
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("lookup")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(new Gson().toJson(Collections.nCopies(UserResource.MAX_LOOKUP_IDS + 1, "id")),
+                        MediaType.APPLICATION_JSON_TYPE));
+        response.close();
+        assertThat(response.getStatus(), equalTo(Response.Status.BAD_REQUEST.getStatusCode()));
+    }
+
+    @Test
+    public void matchingIfNoneMatchShouldReturn_NOT_MODIFIED() {
+        String id = SampleDomain.users().get(SampleDomain.ALICE).getId();
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path(id)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        final EntityTag tag = response.getEntityTag();
+        assertThat(tag, notNullValue());
+        assertThat(tag.isWeak(), is(false));
+
+        final Response notModified = target
+                .path(UserResource.RESOURCE_PATH)
+                .path(id)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.IF_NONE_MATCH, tag.toString())
+                .get();
+
+        assertThat(notModified.getStatus(), equalTo(Response.Status.NOT_MODIFIED.getStatusCode()));
+        assertThat(notModified.getEntityTag(), equalTo(tag));
+        assertThat(notModified.hasEntity(), is(false));
+
+        final Response modified = target
+                .path(UserResource.RESOURCE_PATH)
+                .path(id)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"" + id + ":0\"")
+                .get();
+
+        assertThat(modified.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        assertThat(modified.readEntity(User.class).getId(), equalTo(id));
+    }
+
+    @Test
+    public void updateShouldRequireMatchingETag() {
+        User user = new User("PATCHY", "secret", true);
+        target.path(UserResource.RESOURCE_PATH)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(user, MediaType.APPLICATION_JSON_TYPE));
+
+        final WebTarget userTarget = target
+                .path(UserResource.RESOURCE_PATH)
+                .path(user.getId())
+                .property(HttpUrlConnectorProvider.SET_METHOD_WORKAROUND, true);
+
+        final EntityTag tag = userTarget.request(MediaType.APPLICATION_JSON_TYPE).get().getEntityTag();
+        final Entity<UserPatch> patch = Entity.entity(new UserPatch(false, null), MediaType.APPLICATION_JSON_TYPE);
+
+        Response response = userTarget.request(MediaType.APPLICATION_JSON_TYPE)
+                .method("PATCH", patch);
+        assertThat(response.getStatus(), equalTo(UserResource.PRECONDITION_REQUIRED));
+
+        response = userTarget.request(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.IF_MATCH, tag.toString())
+                .method("PATCH", patch);
+        assertThat(response.getStatus(), equalTo(Response.Status.NO_CONTENT.getStatusCode()));
+        final EntityTag newTag = response.getEntityTag();
+        assertThat(newTag, not(equalTo(tag)));
+
+        response = userTarget.request(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.IF_MATCH, tag.toString())
+                .method("PATCH", patch);
+        assertThat(response.getStatus(), equalTo(Response.Status.PRECONDITION_FAILED.getStatusCode()));
+
+        response = userTarget.request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertThat(response.getEntityTag(), equalTo(newTag));
+        assertThat(response.readEntity(User.class).isActive(), is(false));
+
+        response = userTarget.request(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.IF_MATCH, newTag.toString())
+                .put(Entity.entity(new User("PATCHY-RENAMED", "secret", true), MediaType.APPLICATION_JSON_TYPE));
+        assertThat(response.getStatus(), equalTo(Response.Status.NO_CONTENT.getStatusCode()));
+
+        User renamed = userTarget.request(MediaType.APPLICATION_JSON_TYPE).get().readEntity(User.class);
+        assertThat(renamed.getUsername(), equalTo("PATCHY-RENAMED"));
+        assertThat(renamed.isActive(), is(true));
+
+        String usernames = target.path(UserResource.RESOURCE_PATH)
+                .path("usernames")
+                .queryParam("prefix", "PATCHY")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get(String.class);
+        assertThat(new Gson().<List<String>>fromJson(usernames, new TypeToken<List<String>>() {}.getType()),
+                contains("PATCHY-RENAMED"));
+    }
+
+    @Test
+    public void updateOfUnknownUserShouldReturn404() {
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("no-such-id")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.IF_MATCH, "\"no-such-id:0\"")
+                .put(Entity.entity(new User("NOBODY", "x", true), MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.NOT_FOUND.getStatusCode()));
+    }
+
+    @Test
+    public void repeatedLookupShouldBeServedFromCache() {
+        String id = SampleDomain.users().get(SampleDomain.ALICE).getId();
+        for (int i = 0; i < 2; i++) {
+            final Response response = target
+                    .path(UserResource.RESOURCE_PATH)
+                    .path(id)
+                    .request(MediaType.APPLICATION_JSON_TYPE)
+                    .get();
+            assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        }
+
+        final Response response = target
+                .path(AdminResource.RESOURCE_PATH)
+                .path("metrics")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        Map<String, Object> metrics = new Gson().fromJson(
+                response.readEntity(String.class), new TypeToken<Map<String, Object>>() {}.getType());
+        assertThat(((Number) metrics.get("repository.userCache.hits")).longValue(), greaterThan(0L));
+    }
+
+    @Test
+    public void connectionPoolMetricsShouldBePublished() {
+        final Response response = target
+                .path(AdminResource.RESOURCE_PATH)
+                .path("metrics")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        Map<String, Object> metrics = new Gson().fromJson(
+                response.readEntity(String.class), new TypeToken<Map<String, Object>>() {}.getType());
+        assertThat(((Number) metrics.get("jpa-pool.pool.TotalConnections")).intValue(), greaterThan(0));
+        assertThat(metrics.get("jpa-pool.pool.PendingConnections"), is(notNullValue()));
+        assertThat(metrics.get("jpa-pool.pool.Wait"), is(notNullValue()));
+    }
+
     @Test
     public void shouldFindUsersByName() {
         final Response response = target
@@ -110,6 +378,297 @@ public class UserResourceTest {
         assertThat(users, hasSize(greaterThan(1)));
     }
 
+    @Test
+    public void shouldPageThroughUsersFollowingNextLink() {
+        final Response all = target
+                .path(UserResource.RESOURCE_PATH)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertThat(all.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        final int total = all.readEntity(new GenericType<List<User>>() {}).size();
+
+        List<String> usernames = new ArrayList<>();
+        WebTarget page = target.path(UserResource.RESOURCE_PATH).queryParam("limit", 2);
+        while (page != null) {
+            final Response response = page
+                    .request(MediaType.APPLICATION_JSON_TYPE)
+                    .get();
+
+            assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+            List<User> users = response.readEntity(new GenericType<List<User>>() {});
+            assertThat(users, hasSize(lessThanOrEqualTo(2)));
+            for (User u : users) {
+                usernames.add(u.getUsername());
+            }
+            Link next = response.getLink("next");
+            page = next != null ? ClientBuilder.newClient().target(next) : null;
+        }
+
+        assertThat(usernames, hasSize(total));
+        assertThat(Ordering.natural().isStrictlyOrdered(usernames), is(true));
+    }
+
+    @Test
+    public void shouldPageThroughUserSummaries() {
+        final Response all = target
+                .path(UserResource.RESOURCE_PATH)
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        final int total = all.readEntity(new GenericType<List<User>>() {}).size();
+
+        List<String> usernames = new ArrayList<>();
+        WebTarget page = target.path(UserResource.RESOURCE_PATH).path("summary").queryParam("limit", 2);
+        while (page != null) {
+            final Response response = page
+                    .request(MediaType.APPLICATION_JSON_TYPE)
+                    .get();
+
+            assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+            List<UserSummary> users = response.readEntity(new GenericType<List<UserSummary>>() {});
+            assertThat(users, hasSize(lessThanOrEqualTo(2)));
+            for (UserSummary u : users) {
+                assertThat(u.getId(), notNullValue());
+                usernames.add(u.getUsername());
+            }
+            Link next = response.getLink("next");
+            page = next != null ? ClientBuilder.newClient().target(next) : null;
+        }
+
+        assertThat(usernames, hasSize(total));
+        assertThat(Ordering.natural().isStrictlyOrdered(usernames), is(true));
+    }
+
+    @Test
+    public void malformedPageCursorShouldReturn_BAD_REQUEST() {
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .queryParam("after", "%%%")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.BAD_REQUEST.getStatusCode()));
+    }
+
+    @Test
+    public void shouldSuggestUsernamesByPrefix() {
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("usernames")
+                .queryParam("prefix", "S")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        List<String> usernames = Arrays.asList(new Gson().fromJson(response.readEntity(String.class), String[].class));
+        assertThat(usernames, hasItems(SampleDomain.SCOTT, SampleDomain.SHREK));
+    }
+
+    @Test
+    public void shouldExportUsersAsJsonArray() {
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("export")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING), equalTo("gzip"));
+
+        List<User> users = response.readEntity(new GenericType<List<User>>() {});
+        assertThat(users, hasSize(greaterThan(3)));
+    }
+
+    @Test
+    public void shouldExportUsersAsNdjson() {
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("export")
+                .queryParam("user", "S")
+                .request(UserResource.APPLICATION_NDJSON)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        assertThat(response.getMediaType().toString(), containsString(UserResource.APPLICATION_NDJSON));
+
+        List<String> lines = Splitter.on('\n').omitEmptyStrings().splitToList(response.readEntity(String.class));
+        assertThat(lines, hasSize(greaterThan(1)));
+        for (String line : lines) {
+            User u = new Gson().fromJson(line, User.class);
+            assertThat(u.getUsername(), startsWith("S"));
+        }
+    }
+
+    @Test
+    public void shouldCreateUsersInBatchAndReportEachItem() {
+        final List<User> users = Arrays.asList(
+                new User("BATCH-1", "secret", true),
+                new User(SampleDomain.SCOTT, "tiger", true),
+                new User("  ", "blank", true));
+
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("batch")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(new Gson().toJson(users), MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+
+        List<PersistResult> results = response.readEntity(new GenericType<List<PersistResult>>() {});
+        assertThat(results, hasSize(3));
+        assertThat(results.get(0).getStatus(), is(PersistResult.Status.CREATED));
+        assertThat(results.get(1).getStatus(), is(PersistResult.Status.CONFLICT));
+        assertThat(results.get(2).getStatus(), is(PersistResult.Status.INVALID));
+    }
+
+    @Test
+    public void badItemsInBatchShouldBeReportedAsInvalid() {
+        final Gson gson = new Gson();
+        final String json = "[" +
+                gson.toJson(new User("BAD-ITEMS-1", "secret", true)) + "," +
+                "{\"username\": \"BAD-ITEMS-2\", \"active\": {\"not\": \"a boolean\"}}," +
+                "null," +
+                "{\"id\": \"" + Strings.repeat("x", 37) + "\", \"username\": \"BAD-ITEMS-3\"}," +
+                "{\"id\": null, \"username\": \"BAD-ITEMS-4\"}," +
+                gson.toJson(new User("BAD-ITEMS-5", "secret", true)) +
+                "]";
+
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("batch")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header("X-API-Key", "bad-items")
+                .post(Entity.entity(json, MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+
+        List<PersistResult> results = response.readEntity(new GenericType<List<PersistResult>>() {});
+        assertThat(results, hasSize(6));
+        assertThat(results.get(0).getStatus(), is(PersistResult.Status.CREATED));
+        for (int i = 1; i < 5; i++) {
+            assertThat("Item " + i, results.get(i).getStatus(), is(PersistResult.Status.INVALID));
+            assertThat(results.get(i).getIndex(), is(i));
+        }
+        assertThat(results.get(5).getStatus(), is(PersistResult.Status.CREATED));
+    }
+
+    @Test
+    public void malformedNdjsonShouldEndBatchWithInvalidItem() {
+        final Gson gson = new Gson();
+        final String ndjson =
+                gson.toJson(new User("MALFORMED-1", "secret", true)) + "\n" +
+                "{\"username\": \n" +
+                gson.toJson(new User("MALFORMED-2", "secret", true)) + "\n";
+
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("batch")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header("X-API-Key", "bad-items")
+                .post(Entity.entity(ndjson, UserResource.APPLICATION_NDJSON));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+
+        List<PersistResult> results = response.readEntity(new GenericType<List<PersistResult>>() {});
+        assertThat(results, hasSize(2));
+        assertThat(results.get(0).getStatus(), is(PersistResult.Status.CREATED));
+        assertThat(results.get(1).getStatus(), is(PersistResult.Status.INVALID));
+    }
+
+    @Test
+    public void shouldCreateUsersFromNdjsonStream() {
+        final Gson gson = new Gson();
+        final String ndjson =
+                gson.toJson(new User("NDJSON-1", "secret", true)) + "\n" +
+                gson.toJson(new User("NDJSON-2", "secret", false)) + "\n";
+
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("batch")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(ndjson, UserResource.APPLICATION_NDJSON));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+
+        List<PersistResult> results = response.readEntity(new GenericType<List<PersistResult>>() {});
+        assertThat(results, hasSize(2));
+        for (PersistResult result : results) {
+            assertThat(result.getStatus(), is(PersistResult.Status.CREATED));
+        }
+    }
+
+    @Test
+    public void shouldCreateUsersFromGzippedNdjsonStream() throws Exception {
+        final Gson gson = new Gson();
+        final String ndjson =
+                gson.toJson(new User("GZIP-1", "secret", true)) + "\n" +
+                gson.toJson(new User("GZIP-2", "secret", false)) + "\n";
+
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("batch")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header("X-API-Key", "compressed-upload")
+                .post(Entity.entity(gzip(ndjson), new Variant(MediaType.valueOf(UserResource.APPLICATION_NDJSON), (String) null, "gzip")));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+
+        List<PersistResult> results = response.readEntity(new GenericType<List<PersistResult>>() {});
+        assertThat(results, hasSize(2));
+        for (PersistResult result : results) {
+            assertThat(result.getStatus(), is(PersistResult.Status.CREATED));
+        }
+    }
+
+    @Test
+    public void gzippedJsonArrayBatchesShouldReuseInflaters() throws Exception {
+        final Gson gson = new Gson();
+        final double created = inflatersCreated("gzip");
+
+        // The array is parsed up to the closing bracket only, the end of the gzip stream is never read
+        for (int i = 0; i < 10; i++) {
+            final String json = "[" + gson.toJson(new User("GZIP-ARRAY-" + i, "secret", true)) + "]";
+            final Response response = target
+                    .path(UserResource.RESOURCE_PATH)
+                    .path("batch")
+                    .request(MediaType.APPLICATION_JSON_TYPE)
+                    .header("X-API-Key", "compressed-array-upload")
+                    .post(Entity.entity(gzip(json), new Variant(MediaType.APPLICATION_JSON_TYPE, (String) null, "gzip")));
+            response.close();
+            assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        }
+        assertThat(inflatersCreated("gzip") - created, lessThanOrEqualTo(1.0));
+    }
+
+    @Test
+    public void compressedBatchInflatingOverLimitShouldReturn_REQUEST_ENTITY_TOO_LARGE() throws Exception {
+        // A few KB compressed, 1 MB of whitespace inflated
+        final String json = "[" + Strings.repeat(" ", 1024 * 1024) + "]";
+
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("batch")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header("X-API-Key", "compressed-upload")
+                .post(Entity.entity(gzip(json), new Variant(MediaType.APPLICATION_JSON_TYPE, (String) null, "gzip")));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode()));
+    }
+
+    @Test
+    public void malformedBatchShouldReturn_BAD_REQUEST() {
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("batch")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity("{\"username\": \"not an array\"}", MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.BAD_REQUEST.getStatusCode()));
+    }
+
     @Test
     public void headersShouldContainContentEncodingGZipAndContentTypeUTF8() {
         final Response response = target
@@ -147,6 +706,40 @@ public class UserResourceTest {
         assertThat(objects, is(nullValue()));
     }
 
+    @Test
+    public void bodyBelowMinSizeShouldNotBeCompressed() {
+        final Response response = target
+                .path(UserResource.RESOURCE_PATH)
+                .path("export")
+                .queryParam("user", "no-such-user")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+        assertThat(response.getHeaderString(HttpHeaders.VARY), containsString(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    public void shouldNegotiateDeflateByQValue() throws Exception {
+        final Response response = ClientBuilder.newClient()
+                .target(target.getUri())
+                .path(UserResource.RESOURCE_PATH)
+                .path("export")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0.5, deflate")
+                .get();
+
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING), equalTo("deflate"));
+
+        try (InputStream in = new InflaterInputStream(response.readEntity(InputStream.class))) {
+            final String json = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+            assertThat(json, containsString(SampleDomain.SCOTT));
+        }
+    }
+
     @Test
     public void getApplicationWadl() throws Exception {
         final Response response = target
@@ -158,4 +751,176 @@ public class UserResourceTest {
         String wadl = response.readEntity(String.class);
         assertThat(wadl.length(), greaterThan(0));
     }
+
+    @Test
+    public void shouldReportSharedCacheStatistics() {
+        final String id = "5c0f7d16-bb78-4832-95df-72e434251e10";  // SCOTT, see import.sql
+        target.path(UserResource.RESOURCE_PATH).path(id).request(MediaType.APPLICATION_JSON_TYPE).get();
+
+        final String json = target.path(AdminResource.RESOURCE_PATH)
+                .path("cache")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get(String.class);
+
+        final Map<String, Map<String, Object>> sessions =
+                new Gson().fromJson(json, new TypeToken<Map<String, Map<String, Object>>>(){}.getType());
+        assertThat(sessions.size(), is(1));
+
+        final Map<String, Object> session = sessions.values().iterator().next();
+        assertThat(session.get("hits"), is(notNullValue()));
+        assertThat(session.get("misses"), is(notNullValue()));
+
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> user = (Map<String, Object>) ((Map<String, Object>) session.get("entities")).get("User");
+        assertThat(user.get("type"), equalTo("SoftCacheWeakIdentityMap"));
+        assertThat(user.get("isolation"), equalTo("SHARED"));
+        assertThat(((Number) user.get("maxSize")).intValue(), is(1000));
+        assertThat(((Number) user.get("size")).intValue(), greaterThan(0));
+    }
+
+    @Test
+    public void requestsNotUsingPersistenceShouldNotCreateEntityManager() {
+        final double unused = unitOfWorkCount("unused");
+        final double used = unitOfWorkCount("used");
+
+        // Answered from the write-behind status cache, without touching the database
+        target.path(UserResource.RESOURCE_PATH).path("queue").path("no-such-id")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+        assertThat(unitOfWorkCount("unused"), greaterThan(unused));
+        assertThat(unitOfWorkCount("used"), is(used));
+
+        // A user that does not exist is never cached, so it is always looked up in the database
+        target.path(UserResource.RESOURCE_PATH).path("no-such-user-id")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+        assertThat(unitOfWorkCount("used"), greaterThan(used));
+    }
+
+    @Test
+    public void cachedFindByIdShouldNotCreateEntityManager() {
+        final WebTarget scott = target.path(UserResource.RESOURCE_PATH).path("5c0f7d16-bb78-4832-95df-72e434251e10");
+        scott.request(MediaType.APPLICATION_JSON_TYPE).get().close();  // Loads SCOTT into the user cache
+
+        final double unused = unitOfWorkCount("unused");
+        final double used = unitOfWorkCount("used");
+
+        final Response response = scott.request(MediaType.APPLICATION_JSON_TYPE).get();
+        response.close();
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        assertThat(unitOfWorkCount("unused"), greaterThan(unused));
+        assertThat(unitOfWorkCount("used"), is(used));
+    }
+
+    @Test
+    public void shouldServeHttp2Cleartext() throws Exception {
+        try (H2cClient client = new H2cClient(server.getURI())) {
+            final H2cClient.Result response = client.get(target.path(UserResource.RESOURCE_PATH)
+                    .path("5c0f7d16-bb78-4832-95df-72e434251e10")  // SCOTT
+                    .getUri())
+                    .get(5, TimeUnit.SECONDS);
+
+            assertThat(response.status(), equalTo(Response.Status.OK.getStatusCode()));
+            assertThat(response.content(), containsString("SCOTT"));
+        }
+    }
+
+    @Test
+    public void shouldServeOnExtraListener() {
+        final ServerConnector admin = (ServerConnector) Arrays.stream(server.getConnectors())
+                .filter(c -> "admin".equals(c.getName()))
+                .findFirst()
+                .orElse(null);
+        assertNotNull(admin);
+
+        final Response response = ClientBuilder.newClient()
+                .target(UriBuilder.fromUri(target.getUri()).port(admin.getLocalPort()))
+                .path(UserResource.RESOURCE_PATH)
+                .path("5c0f7d16-bb78-4832-95df-72e434251e10")  // SCOTT
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        assertThat(admin.getLocalPort(), not(equalTo(server.getURI().getPort())));
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        assertThat(response.readEntity(User.class).getUsername(), equalTo("SCOTT"));
+    }
+
+    @Test
+    public void clientOverItsRateLimitShouldGetTooManyRequests() {
+        Response response = null;
+        for (int i = 0; i < 200; i++) {
+            response = target.path(UserResource.RESOURCE_PATH)
+                    .queryParam("user", "S")
+                    .request(MediaType.APPLICATION_JSON_TYPE)
+                    .header("X-API-Key", "hammer")
+                    .get();
+            response.close();
+            if(response.getStatus() != Response.Status.OK.getStatusCode()) {
+                break;
+            }
+            assertThat(response.getHeaderString(RateLimitFilter.X_RATE_LIMIT_LIMIT), equalTo("40"));
+        }
+        assertThat(response.getStatus(), equalTo(429));
+        assertThat(response.getHeaderString(HttpHeaders.RETRY_AFTER), equalTo("1"));
+        assertThat(response.getHeaderString(RateLimitFilter.X_RATE_LIMIT_REMAINING), equalTo("0"));
+
+        // Other clients are not affected
+        response = target.path(UserResource.RESOURCE_PATH)
+                .queryParam("user", "S")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header("X-API-Key", "well-behaved")
+                .get();
+        response.close();
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+    }
+
+    @Test
+    public void multiGetShouldBeChargedToLookupLimit() {
+        final Response response = target.path(UserResource.RESOURCE_PATH)
+                .queryParam("id", "no-such-id")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .header("X-API-Key", "multi-get")
+                .get();
+        response.close();
+        assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+        assertThat(response.getHeaderString(RateLimitFilter.X_RATE_LIMIT_LIMIT), equalTo("200"));
+    }
+
+    @Test
+    public void shouldReportAdmissionLimitPerResourceMethod() {
+        target.path(UserResource.RESOURCE_PATH).path("5c0f7d16-bb78-4832-95df-72e434251e10")  // SCOTT
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get();
+
+        final Map<String, Object> metrics = metrics();
+        assertThat(((Number) metrics.get("admission.UserResource.findById.limit")).intValue(), greaterThan(0));
+        assertThat(metrics.containsKey("admission.UserResource.findById.inFlight"), is(true));
+        assertThat(metrics.containsKey("admission.UserResource.findById.rejected"), is(true));
+    }
+
+    private static double unitOfWorkCount(final String meter) {
+        return ((Number) ((Map<?, ?>) metrics().get("persistence.unitOfWork." + meter)).get("count")).doubleValue();
+    }
+
+    private static double inflatersCreated(final String coding) {
+        final Map<?, ?> meter = (Map<?, ?>) metrics().get("decompression." + coding + ".inflatersCreated");
+        return meter != null ? ((Number) meter.get("count")).doubleValue() : 0;
+    }
+
+    private static Map<String, Object> metrics() {
+        final String json = target.path(AdminResource.RESOURCE_PATH)
+                .path("metrics")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .get(String.class);
+
+        return new Gson().fromJson(json, new TypeToken<Map<String, Object>>(){}.getType());
+    }
+
+    private static byte[] gzip(final String s) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
 }
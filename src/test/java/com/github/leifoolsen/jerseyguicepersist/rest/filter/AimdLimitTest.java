@@ -0,0 +1,59 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.filter;
+
+import com.github.leifoolsen.jerseyguicepersist.config.AdmissionControlConfig;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AimdLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private final AimdLimit limit = new AimdLimit(new Gson().fromJson(
+            "{initialLimit: 4, minLimit: 2, maxLimit: 6, latencyThreshold: 500, backoffRatio: 0.5}",
+            AdmissionControlConfig.class));
+
+    @Test
+    public void shouldRejectRequestsOverLimit() {
+        for (int i = 0; i < 4; i++) {
+            assertThat(limit.tryAcquire(), is(true));
+        }
+        assertThat(limit.tryAcquire(), is(false));
+        assertThat(limit.inFlight(), is(4));
+    }
+
+    @Test
+    public void fastResponsesShouldIncreaseLimitUpToMax() {
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < limit.limit(); j++) {
+                limit.tryAcquire();
+            }
+            limit.release(FAST, false);
+        }
+        assertThat(limit.limit(), is(6));
+    }
+
+    @Test
+    public void fastResponsesAtLowUtilisationShouldNotIncreaseLimit() {
+        limit.tryAcquire();
+        limit.release(FAST, false);
+        assertThat(limit.limit(), is(4));
+    }
+
+    @Test
+    public void slowOrOverloadedResponsesShouldDecreaseLimitDownToMin() {
+        limit.tryAcquire();
+        limit.release(SLOW, false);
+        assertThat(limit.limit(), is(2));
+
+        limit.tryAcquire();
+        limit.release(FAST, true);
+        assertThat(limit.limit(), is(2));
+        assertThat(limit.inFlight(), is(0));
+    }
+}
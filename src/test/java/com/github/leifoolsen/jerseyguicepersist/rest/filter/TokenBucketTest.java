@@ -0,0 +1,45 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.filter;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void shouldAllowBurstThenRejectUntilRefilled() {
+        final long now = 1000 * SECOND;
+        final TokenBucket bucket = new TokenBucket(2, 4, now);  // A token every 500 ms
+
+        assertThat(bucket.remaining(now), is(4));
+        for (int i = 0; i < 4; i++) {
+            assertThat(bucket.tryConsume(now), is(true));
+        }
+        assertThat(bucket.remaining(now), is(0));
+        assertThat(bucket.tryConsume(now), is(false));
+        assertThat(bucket.untilNext(now), is(SECOND / 2));
+        assertThat(bucket.untilFull(now), is(2 * SECOND));
+
+        assertThat(bucket.tryConsume(now + SECOND / 2), is(true));
+        assertThat(bucket.tryConsume(now + SECOND / 2), is(false));
+    }
+
+    @Test
+    public void idleBucketShouldNotHoldMoreThanBurst() {
+        final long now = 1000 * SECOND;
+        final TokenBucket bucket = new TokenBucket(2, 4, now);
+
+        final long later = now + 60 * SECOND;
+        assertThat(bucket.remaining(later), is(4));
+        assertThat(bucket.untilFull(later), is(0L));
+        for (int i = 0; i < 4; i++) {
+            assertThat(bucket.tryConsume(later), is(true));
+        }
+        assertThat(bucket.tryConsume(later), is(false));
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.interceptor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class AcceptEncodingTest {
+
+    private static final List<String> SUPPORTED = Arrays.asList("gzip", "deflate");
+
+    @Test
+    public void shouldPreferHighestQValue() {
+        assertThat(AcceptEncoding.negotiate("gzip;q=0.5, deflate", SUPPORTED), equalTo("deflate"));
+        assertThat(AcceptEncoding.negotiate("deflate;q=0.2, GZIP;q=0.8, br", SUPPORTED), equalTo("gzip"));
+    }
+
+    @Test
+    public void shouldPreferFirstSupportedOnTie() {
+        assertThat(AcceptEncoding.negotiate("deflate, gzip", SUPPORTED), equalTo("gzip"));
+        assertThat(AcceptEncoding.negotiate("*", SUPPORTED), equalTo("gzip"));
+    }
+
+    @Test
+    public void shouldNotChooseCodingsNotAcceptable() {
+        assertThat(AcceptEncoding.negotiate(null, SUPPORTED), nullValue());
+        assertThat(AcceptEncoding.negotiate("identity", SUPPORTED), nullValue());
+        assertThat(AcceptEncoding.negotiate("gzip;q=0, deflate;q=0", SUPPORTED), nullValue());
+        assertThat(AcceptEncoding.negotiate("*;q=0.5, gzip;q=0", SUPPORTED), equalTo("deflate"));
+        assertThat(AcceptEncoding.negotiate("gzip;q=x", SUPPORTED), nullValue());
+    }
+}
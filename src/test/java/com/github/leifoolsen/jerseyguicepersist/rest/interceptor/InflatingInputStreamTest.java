@@ -0,0 +1,78 @@
+package com.github.leifoolsen.jerseyguicepersist.rest.interceptor;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class InflatingInputStreamTest {
+
+    private static final String TEXT = Strings.repeat("{\"username\": \"SCOTT\"}\n", 10000);
+
+    private final InflaterPool gzip = new InflaterPool("gzip", 1, 512);
+    private final InflaterPool deflate = new InflaterPool("deflate", 1, 512);
+
+    @Test
+    public void shouldInflateGzipAndDeflate() throws Exception {
+        assertThat(inflate(gzip(TEXT), gzip, Long.MAX_VALUE), equalTo(TEXT));
+        assertThat(inflate(deflate(TEXT), deflate, Long.MAX_VALUE), equalTo(TEXT));
+
+        // Inflaters are reused
+        assertThat(inflate(gzip(TEXT), gzip, Long.MAX_VALUE), equalTo(TEXT));
+    }
+
+    @Test
+    public void shouldRejectBodyInflatingOverLimit() throws Exception {
+        try {
+            inflate(gzip(TEXT), gzip, TEXT.length() - 1);
+            fail("Expected WebApplicationException");
+        }
+        catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus(), equalTo(Response.Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode()));
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void shouldRejectCorruptGzipTrailer() throws Exception {
+        final byte[] body = gzip(TEXT);
+        body[body.length - 1] ^= 1;
+        inflate(body, gzip, Long.MAX_VALUE);
+    }
+
+    private static String inflate(final byte[] body, final InflaterPool pool, final long maxInflatedSize) throws IOException {
+        try (InputStream in = new InflatingInputStream(new ByteArrayInputStream(body), pool, Long.MAX_VALUE, maxInflatedSize)) {
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] gzip(final String s) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(final String s) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}